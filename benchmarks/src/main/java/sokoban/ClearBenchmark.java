@@ -0,0 +1,61 @@
+package sokoban;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link Sokoban#clear()} after a random walk of a few hundred moves. The walk
+ * is set up outside the measurement, before every invocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ClearBenchmark {
+
+	@Param({ "small", "medium", "large" })
+	public String level;
+
+	private Sokoban puzzle;
+	private Random rnd;
+
+	@Setup
+	public void setup() {
+		puzzle = new Sokoban(Levels.get(level));
+		rnd = new Random(42);
+	}
+
+	@Setup(Level.Invocation)
+	public void scramble() {
+		// avoid canMove(), so that the walk does not show in the allocation rate
+		for (int i = 0; i < WALK; i++) {
+			Direction dir = DIRECTIONS[rnd.nextInt(DIRECTIONS.length)];
+			if (puzzle.canMove(dir))
+				puzzle.move(dir);
+		}
+	}
+
+	@Benchmark
+	public int clear() {
+		puzzle.clear();
+		return puzzle.numOnTarget();
+	}
+
+	private static final int WALK = 300;
+	private static final Direction[] DIRECTIONS = Direction.values();
+}
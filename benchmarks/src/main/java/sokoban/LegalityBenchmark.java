@@ -0,0 +1,80 @@
+package sokoban;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The push checks {@link Box#isStuckSafe(Direction)} and
+ * {@link Cell#isMoveableBoxLocation(Cell, Direction)}, for a push that ends
+ * next to another box wherever the level has one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LegalityBenchmark {
+
+	@Param({ "small", "medium", "large" })
+	public String level;
+
+	private Box box;
+	private Cell origin;
+	private Cell next;
+	private Direction dir;
+
+	@Setup
+	public void setup() {
+		Sokoban puzzle = new Sokoban(Levels.get(level));
+		for (int row = 0; row < puzzle.getNumRows(); row++) {
+			for (int col = 0; col < puzzle.getNumCols(); col++) {
+				Cell cell = puzzle.getCell(row, col);
+				if (!cell.hasBox())
+					continue;
+				for (Direction d : Direction.values()) {
+					Cell to = cell.getCell(d);
+					if ((to == null) || !to.isEmpty() || !to.isWallSafe() || to.isTarget())
+						continue;
+					boolean crowded = hasBox(to.getCell(d)) || hasBox(to.getCell(d.left()))
+							|| hasBox(to.getCell(d.right()));
+					if ((box == null) || crowded) {
+						box = (Box) cell.getOccupant();
+						origin = cell;
+						next = to;
+						dir = d;
+					}
+					if (crowded)
+						return;
+				}
+			}
+		}
+		if (box == null)
+			throw new IllegalStateException("no box to push in " + level);
+	}
+
+	private static boolean hasBox(Cell cell) {
+		return (cell != null) && cell.hasBox();
+	}
+
+	@Benchmark
+	public boolean isStuckSafe() {
+		return box.isStuckSafe(dir);
+	}
+
+	@Benchmark
+	public boolean isMoveableBoxLocation() {
+		return next.isMoveableBoxLocation(origin, dir.left());
+	}
+}
@@ -0,0 +1,73 @@
+package sokoban;
+
+/**
+ * Screens used by the benchmarks, from a tiny room to a very large generated
+ * warehouse.
+ */
+public class Levels {
+
+	public static final String SMALL = ""
+			+ "####\n"
+			+ "# .#\n"
+			+ "#  ###\n"
+			+ "#*@  #\n"
+			+ "#  $ #\n"
+			+ "#  ###\n"
+			+ "####\n";
+
+	public static final String MEDIUM = ""
+			+ "    #####\n"
+			+ "    #   #\n"
+			+ "    #$  #\n"
+			+ "  ###  $##\n"
+			+ "  #  $ $ #\n"
+			+ "### # ## #   ######\n"
+			+ "#   # ## #####  ..#\n"
+			+ "# $  $          ..#\n"
+			+ "##### ### #@##  ..#\n"
+			+ "    #     #########\n"
+			+ "    #######\n";
+
+	public static final String LARGE = warehouse(256);
+
+	/**
+	 * A size x size room with pillars, and stacked pairs of boxes each facing a
+	 * pair of targets two cells to the east
+	 */
+	public static String warehouse(int size) {
+		if (size < 8)
+			throw new IllegalArgumentException("size must be at least 8");
+		StringBuilder b = new StringBuilder(size * (size + 1));
+		for (int row = 0; row < size; row++) {
+			for (int col = 0; col < size; col++) {
+				boolean border = (row == 0) || (col == 0) || (row == size - 1) || (col == size - 1);
+				boolean inside = (row < size - 6) && (col < size - 6);
+				if (border || ((row % 6 == 0) && (col % 6 == 0)))
+					b.append(Sokoban.WALL);
+				else if ((row == 1) && (col == 1))
+					b.append(Sokoban.ACTOR);
+				else if (inside && ((row % 6 == 3) || (row % 6 == 4)) && (col % 6 == 2))
+					b.append(Sokoban.BOX);
+				else if (inside && ((row % 6 == 3) || (row % 6 == 4)) && (col % 6 == 4))
+					b.append(Sokoban.TARGET);
+				else
+					b.append(Sokoban.EMPTY);
+			}
+			b.append('\n');
+		}
+		return b.toString();
+	}
+
+	public static String get(String name) {
+		switch (name) {
+		case "small":
+			return SMALL;
+		case "medium":
+			return MEDIUM;
+		case "large":
+			return LARGE;
+		default:
+			throw new IllegalArgumentException("unknown level " + name);
+		}
+	}
+}
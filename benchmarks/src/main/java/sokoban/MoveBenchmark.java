@@ -0,0 +1,54 @@
+package sokoban;
+
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link Sokoban#canMove()} and {@link Sokoban#move(Direction)} from the start
+ * position. Each move is undone straight away so that every invocation starts
+ * from the same place.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoveBenchmark {
+
+	@Param({ "small", "medium", "large" })
+	public String level;
+
+	private Sokoban puzzle;
+	private Direction step;
+
+	@Setup
+	public void setup() {
+		puzzle = new Sokoban(Levels.get(level));
+		step = puzzle.canMove().firstElement();
+	}
+
+	@Benchmark
+	public Vector<Direction> canMove() {
+		return puzzle.canMove();
+	}
+
+	@Benchmark
+	public int moveAndUndo() {
+		puzzle.move(step);
+		puzzle.undo();
+		return puzzle.numMoves();
+	}
+}
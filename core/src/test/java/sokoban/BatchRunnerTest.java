@@ -0,0 +1,72 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * A batch over a small pack: each level's outcome, solving and playing
+ */
+class BatchRunnerTest {
+
+	@Test
+	void solvesPack() throws IOException {
+		BatchResult[] results = run(pack(Levels.ONE_BOX + "\n" + STUCK), new BatchRunner(2));
+		assertEquals(BatchResult.Outcome.SOLVED, results[0].getOutcome());
+		assertEquals("R", results[0].getDetail());
+		assertEquals(1, results[0].getMoves());
+		assertEquals(BatchResult.Outcome.UNSOLVED, results[1].getOutcome());
+	}
+
+	@Test
+	void playsPack() throws IOException {
+		BatchRunner runner = new BatchRunner(2);
+		runner.setMoveLimit(100);
+		// always back west when it can, so it never reaches the box in the corridor
+		runner.setPlayer(() -> choices -> ((choices & Direction.WEST.bit()) != 0) ? Direction.WEST.ordinal()
+				: Integer.numberOfTrailingZeros(choices));
+		BatchResult[] results = run(pack(Levels.ONE_BOX + "\n" + CORRIDOR), runner);
+		assertEquals(BatchResult.Outcome.SOLVED, results[0].getOutcome());
+		assertEquals(1, results[0].getMoves());
+		assertEquals(BatchResult.Outcome.MOVE_LIMIT, results[1].getOutcome());
+		assertEquals(100, results[1].getMoves());
+		assertNull(results[1].getDetail());
+	}
+
+	private static BatchResult[] run(LevelPack pack, BatchRunner runner) {
+		BatchResult[] results = new BatchResult[pack.size()];
+		runner.run(pack, result -> results[result.getLevel()] = result);
+		return results;
+	}
+
+	private LevelPack pack(String text) throws IOException {
+		File file = dir.resolve("pack.txt").toFile();
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		LevelPack pack = new LevelPack(file);
+		assertEquals(2, pack.size());
+		return pack;
+	}
+
+	// the box is in a corner, off its target
+	private static final String STUCK = ""
+			+ "#####\n"
+			+ "#$ .#\n"
+			+ "#@  #\n"
+			+ "#####\n";
+
+	private static final String CORRIDOR = ""
+			+ "#######\n"
+			+ "#@  $.#\n"
+			+ "#######\n";
+
+	@TempDir
+	Path dir;
+}
@@ -0,0 +1,49 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The bucket queue against a PriorityQueue, and its memory limit
+ */
+class BucketQueueTest {
+
+	@Test
+	void pollsLowestPriorityFirst() {
+		BucketQueue queue = new BucketQueue(64L << 20);
+		assertEquals(0, queue.getMemory());
+		PriorityQueue<Integer> reference = new PriorityQueue<>();
+		Random random = new Random(8);
+		for (int i = 0; i < 1_000_000; i++) {
+			if (reference.isEmpty() || (random.nextInt(3) != 0)) {
+				int priority = random.nextInt(200);
+				assertTrue(queue.add(priority * 1000 + random.nextInt(1000), priority));
+				reference.add(priority);
+			} else {
+				int priority = reference.poll();
+				assertEquals(priority, queue.peekPriority());
+				assertEquals(priority, queue.poll() / 1000);
+			}
+			assertEquals(reference.size(), queue.size());
+		}
+		assertTrue(queue.getMemory() <= (64L << 20));
+	}
+
+	@Test
+	void refusesOnceFull() {
+		BucketQueue queue = new BucketQueue(4 << 10);
+		int added = 0;
+		while (queue.add(added, added % 7))
+			added++;
+		assertTrue(added > 0);
+		assertEquals(4 << 10, queue.getMemory());
+		queue.poll();
+		assertFalse(queue.isEmpty());
+	}
+}
@@ -0,0 +1,93 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Saving and reloading the deadlock database, and files that are missing or
+ * cut short
+ */
+class DeadlockDatabaseTest {
+
+	@Test
+	void reloadsWhatWasSaved() {
+		File file = dir.resolve("deadlocks.db").toFile();
+		Layout one = Levels.start(Levels.THREE_BOXES).getLayout();
+		Layout other = Levels.start(Levels.CLASSIC).getLayout();
+		DeadlockDatabase database = new DeadlockDatabase(file);
+		Random random = new Random(6);
+		long[] patterns = new long[3000]; // enough to grow the tables
+		for (int i = 0; i < patterns.length; i++)
+			patterns[i] = (i == 0) ? 0 : random.nextLong();
+		long[] corrals = new long[1500];
+		for (int i = 0; i < corrals.length; i++)
+			corrals[i] = random.nextLong();
+		for (long pattern : patterns)
+			database.addPattern(pattern);
+		for (long corral : corrals)
+			database.addCorral(one, corral);
+		assertTrue(database.isModified());
+		database.save();
+		assertFalse(database.isModified());
+
+		DeadlockDatabase loaded = new DeadlockDatabase(file);
+		assertEquals(database.size(), loaded.size());
+		assertFalse(loaded.isModified());
+		for (long pattern : patterns)
+			assertTrue(loaded.containsPattern(pattern), "pattern " + pattern);
+		for (long corral : corrals) {
+			assertTrue(loaded.containsCorral(one, corral), "corral " + corral);
+			assertFalse(loaded.containsCorral(other, corral), "corral " + corral + " in another level");
+		}
+		for (int i = 0; i < 1000; i++) {
+			long key = random.nextLong();
+			assertFalse(loaded.containsPattern(key));
+			assertFalse(loaded.containsCorral(one, key));
+		}
+	}
+
+	@Test
+	void missingFileIsEmpty() {
+		File file = dir.resolve("missing.db").toFile();
+		DeadlockDatabase database = new DeadlockDatabase(file);
+		assertEquals(0, database.size());
+		assertFalse(database.containsPattern(0));
+		database.save();
+		assertFalse(file.exists(), "nothing to save");
+		database.addPattern(1);
+		database.save();
+		assertTrue(file.exists());
+		assertTrue(new DeadlockDatabase(file).containsPattern(1));
+	}
+
+	@Test
+	void truncatedFileFails() throws IOException {
+		File file = dir.resolve("truncated.db").toFile();
+		DeadlockDatabase database = new DeadlockDatabase();
+		for (long pattern = 1; pattern <= 10; pattern++)
+			database.addPattern(pattern);
+		database.save(file);
+		long length = file.length();
+		for (long cut : new long[] { 2, 6, 12, length - 3 }) {
+			database.save(file);
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(cut);
+			}
+			assertThrows(SokobanException.class, () -> new DeadlockDatabase(file), "cut to " + cut);
+		}
+	}
+
+	@TempDir
+	Path dir;
+}
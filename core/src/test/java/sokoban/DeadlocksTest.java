@@ -0,0 +1,115 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link Deadlocks#isDeadlocked(Board)} against an exhaustive search of the
+ * push graph: a position it calls deadlocked must have no solution
+ */
+class DeadlocksTest {
+
+	@Test
+	void noFalsePositivesOnRandomPositions() {
+		Random random = new Random(4);
+		for (String level : Levels.SMALL) {
+			Board start = Levels.start(level);
+			Layout layout = start.getLayout();
+			int[] floor = Levels.floor(start);
+			Deadlocks deadlocks = deadlocks(layout);
+			int checked = 0;
+			for (int trial = 0; trial < 400; trial++) {
+				Board board = Levels.random(layout, floor, start.numBoxes(), random);
+				if (deadlocks.isDeadlocked(board)) {
+					assertFalse(solvable(board) == SOLVABLE, "deadlock reported, but solvable\n" + board);
+					checked++;
+				}
+			}
+			assertTrue(checked > 0, "no deadlocks found to check on\n" + start);
+		}
+	}
+
+	@Test
+	void noFalsePositivesOnPlayedPositions() {
+		Random random = new Random(5);
+		Direction[] dirs = Direction.values();
+		for (String level : Levels.SMALL) {
+			Board start = Levels.start(level);
+			Deadlocks deadlocks = deadlocks(start.getLayout());
+			for (int trial = 0; trial < 200; trial++) {
+				Board board = new Board(start);
+				for (int move = 0; move < 40; move++) {
+					Direction dir = dirs[random.nextInt(dirs.length)];
+					if (!board.canMove(dir))
+						continue;
+					board.step(dir);
+					if (deadlocks.isDeadlocked(board))
+						assertFalse(solvable(board) == SOLVABLE, "deadlock reported, but solvable\n" + board);
+				}
+			}
+		}
+	}
+
+	@Test
+	void solvableStartsAreNotDeadlocked() {
+		for (String level : Levels.SMALL) {
+			Board start = Levels.start(level);
+			if (solvable(start) == SOLVABLE)
+				assertFalse(deadlocks(start.getLayout()).isDeadlocked(start), "deadlock reported\n" + start);
+		}
+	}
+
+	/**
+	 * A fresh Deadlocks that learns nothing from, and teaches nothing to, the
+	 * default database
+	 */
+	private static Deadlocks deadlocks(Layout layout) {
+		Deadlocks deadlocks = new Deadlocks(layout);
+		deadlocks.setDatabase(new DeadlockDatabase());
+		return deadlocks;
+	}
+
+	/**
+	 * Breadth-first over every position reachable by legal pushes, up to
+	 * LIMIT of them
+	 */
+	private static int solvable(Board start) {
+		if (start.onTarget())
+			return SOLVABLE;
+		Layout layout = start.getLayout();
+		PushGraph graph = new PushGraph(layout);
+		HashSet<Board> seen = new HashSet<>();
+		ArrayDeque<Board> open = new ArrayDeque<>();
+		Board first = graph.normalize(start);
+		seen.add(first);
+		open.add(first);
+		while (!open.isEmpty()) {
+			Board board = open.poll();
+			for (PushGraph.Push push : graph.pushes(board)) {
+				Board next = new Board(board);
+				graph.apply(next, push.getBox(), push.getDirection(), new ArrayList<>());
+				if (next.onTarget())
+					return SOLVABLE;
+				next = graph.normalize(next);
+				if (!seen.add(next))
+					continue;
+				if (seen.size() > LIMIT)
+					return UNKNOWN;
+				open.add(next);
+			}
+		}
+		return UNSOLVABLE;
+	}
+
+	private static final int LIMIT = 200_000;
+	private static final int SOLVABLE = 0;
+	private static final int UNSOLVABLE = 1;
+	private static final int UNKNOWN = 2;
+}
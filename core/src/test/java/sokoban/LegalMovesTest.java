@@ -0,0 +1,67 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The legal move mask against asking {@link Board#canMove(Direction)} about
+ * each direction, and {@link Direction#nthBit(int, int)} against walking the
+ * mask
+ */
+class LegalMovesTest {
+
+	@Test
+	void maskMatchesCanMove() {
+		Random random = new Random(4);
+		for (String level : Levels.ALL) {
+			Board start = Levels.start(level);
+			Layout layout = start.getLayout();
+			int[] floor = Levels.floor(start);
+			for (int trial = 0; trial < 2000; trial++) {
+				int numBoxes = 1 + random.nextInt(floor.length - 1);
+				Board board = Levels.random(layout, floor, numBoxes, random);
+				int expected = 0;
+				for (Direction dir : Direction.values())
+					if (board.canMove(dir))
+						expected |= dir.bit();
+				assertEquals(expected, board.legalMoves(), "\n" + board);
+				assertEquals(expected, Position.of(board).legalMoves());
+			}
+		}
+	}
+
+	@Test
+	void puzzleMaskMatchesCanMove() {
+		Random random = new Random(5);
+		for (String level : Levels.ALL) {
+			Sokoban puzzle = new Sokoban(level);
+			for (int move = 0; move < 500; move++) {
+				int expected = 0;
+				for (Direction dir : Direction.values())
+					if (puzzle.canMove(dir))
+						expected |= dir.bit();
+				int mask = puzzle.legalMoves();
+				assertEquals(expected, mask, "\n" + puzzle);
+				if (mask == 0) {
+					puzzle.clear();
+					continue;
+				}
+				puzzle.move(Direction.of(Direction.nthBit(mask, random.nextInt(Integer.bitCount(mask)))));
+			}
+		}
+	}
+
+	@Test
+	void nthBitCountsSetBits() {
+		for (int mask = 1; mask < 16; mask++) {
+			int n = 0;
+			for (Direction dir : Direction.values())
+				if ((mask & dir.bit()) != 0)
+					assertEquals(dir.ordinal(), Direction.nthBit(mask, n++));
+			assertEquals(Integer.bitCount(mask), n);
+		}
+	}
+}
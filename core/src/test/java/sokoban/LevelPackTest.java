@@ -0,0 +1,104 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Indexing a pack: levels, their titles, and the text between them
+ */
+class LevelPackTest {
+
+	@Test
+	void readsLevelsAndTitles() throws IOException {
+		LevelPack pack = pack(""
+				+ "; a comment before the first level\n"
+				+ "#####\n"
+				+ "#@$.#\n"
+				+ "#####\n"
+				+ "Title: First\n"
+				+ "Author: Someone\n"
+				+ "\n"
+				+ "Second one\n"
+				+ "Author: Someone else\n"
+				+ "\n"
+				+ Levels.TWO_BOXES
+				+ "\n"
+				+ Levels.THREE_BOXES);
+		assertEquals(3, pack.size());
+		assertEquals("First", pack.getTitle(0));
+		assertEquals("Second one", pack.getTitle(1));
+		assertEquals("Level 3", pack.getTitle(2));
+		assertEquals(Levels.ONE_BOX, pack.getScreen(0));
+		assertEquals(Levels.TWO_BOXES, pack.getScreen(1));
+		assertEquals(new Sokoban(Levels.THREE_BOXES).toString(), pack.getLevel(2).toString());
+	}
+
+	@Test
+	void commentNamesLevel() throws IOException {
+		LevelPack pack = pack(";Just a comment\n" + Levels.ONE_BOX);
+		assertEquals(1, pack.size());
+		assertEquals("Just a comment", pack.getTitle(0));
+	}
+
+	@Test
+	void dropsCarriageReturns() throws IOException {
+		LevelPack pack = pack((Levels.ONE_BOX + "Title: Windows\n").replace("\n", "\r\n"));
+		assertEquals(1, pack.size());
+		assertEquals("Windows", pack.getTitle(0));
+		assertEquals(Levels.ONE_BOX, pack.getScreen(0));
+	}
+
+	@Test
+	void readsOtherFloor() throws IOException {
+		LevelPack pack = pack(""
+				+ "######\n"
+				+ "#@$-.#\n"
+				+ "#_$_.#\n"
+				+ "######\n");
+		assertEquals(""
+				+ "######\n"
+				+ "#@$ .#\n"
+				+ "# $ .#\n"
+				+ "######\n", pack.getScreen(0));
+		pack.getLevel(0);
+	}
+
+	@Test
+	void expandsTabs() throws IOException {
+		LevelPack pack = pack(""
+				+ "\t#####\n"
+				+ "\t#@$.#\n"
+				+ "\t#####\n");
+		assertEquals(1, pack.size());
+		String pad = "        ";
+		assertEquals(pad + "#####\n" + pad + "#@$.#\n" + pad + "#####\n", pack.getScreen(0));
+		assertEquals(new Sokoban(pack.getScreen(0)).toString(), pack.getLevel(0).toString());
+	}
+
+	@Test
+	void decodesUtf8Titles() throws IOException {
+		LevelPack pack = pack("Title: Sokoban für Anfänger ✓\n" + Levels.ONE_BOX + "Title: Ёлка\n");
+		assertEquals(1, pack.size());
+		assertEquals("Ёлка", pack.getTitle(0));
+		pack = pack("; Sokoban für Anfänger ✓\n" + Levels.ONE_BOX);
+		assertEquals("Sokoban für Anfänger ✓", pack.getTitle(0));
+	}
+
+	private LevelPack pack(String text) throws IOException {
+		File file = dir.resolve("pack" + (++files) + ".txt").toFile();
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		return new LevelPack(file);
+	}
+
+	@TempDir
+	Path dir;
+	private int files = 0;
+}
@@ -0,0 +1,118 @@
+package sokoban;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Small levels and random positions on them, for the tests
+ */
+final class Levels {
+
+	static final String ONE_BOX = ""
+			+ "#####\n"
+			+ "#@$.#\n"
+			+ "#####\n";
+
+	static final String TWO_BOXES = ""
+			+ "####\n"
+			+ "# .#\n"
+			+ "#  ###\n"
+			+ "#*@  #\n"
+			+ "#  $ #\n"
+			+ "#  ###\n"
+			+ "####\n";
+
+	static final String THREE_BOXES = ""
+			+ "#######\n"
+			+ "#.  . #\n"
+			+ "# $$  #\n"
+			+ "#  $ .#\n"
+			+ "#  @  #\n"
+			+ "#######\n";
+
+	static final String FOUR_BOXES = ""
+			+ "#######\n"
+			+ "#     #\n"
+			+ "# .$. #\n"
+			+ "# $@$ #\n"
+			+ "# .$. #\n"
+			+ "#     #\n"
+			+ "#######\n";
+
+	static final String SEVEN_BOXES = ""
+			+ "  #####\n"
+			+ "###   #\n"
+			+ "#.@$  #\n"
+			+ "### $.#\n"
+			+ "#.##$ #\n"
+			+ "# # . ##\n"
+			+ "#$ *$$.#\n"
+			+ "#   .  #\n"
+			+ "########\n";
+
+	static final String CLASSIC = ""
+			+ "    #####\n"
+			+ "    #   #\n"
+			+ "    #$  #\n"
+			+ "  ###  $##\n"
+			+ "  #  $ $ #\n"
+			+ "### # ## #   ######\n"
+			+ "#   # ## #####  ..#\n"
+			+ "# $  $          ..#\n"
+			+ "##### ### #@##  ..#\n"
+			+ "    #     #########\n"
+			+ "    #######\n";
+
+	static final String[] SMALL = { ONE_BOX, TWO_BOXES, THREE_BOXES, FOUR_BOXES };
+	static final String[] ALL = { ONE_BOX, TWO_BOXES, THREE_BOXES, FOUR_BOXES, SEVEN_BOXES, CLASSIC };
+
+	private Levels() {
+	}
+
+	static Board start(String level) {
+		return new Sokoban(level).getBoard();
+	}
+
+	/**
+	 * The cells the actor can walk to from the start with every box taken away
+	 */
+	static int[] floor(Board start) {
+		Layout layout = start.getLayout();
+		boolean[] seen = new boolean[layout.getNumCells()];
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+		List<Integer> cells = new ArrayList<>();
+		seen[start.getActor()] = true;
+		queue.add(start.getActor());
+		while (!queue.isEmpty()) {
+			int cell = queue.poll();
+			cells.add(cell);
+			for (Direction dir : Direction.values()) {
+				int next = layout.next(cell, dir);
+				if ((next != Layout.NONE) && !layout.isWall(next) && !seen[next]) {
+					seen[next] = true;
+					queue.add(next);
+				}
+			}
+		}
+		return cells.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * A position with numBoxes boxes and the actor on random floor cells
+	 */
+	static Board random(Layout layout, int[] floor, int numBoxes, Random random) {
+		long[] boxes = new long[layout.getNumWords()];
+		int[] cells = floor.clone();
+		for (int i = cells.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int cell = cells[i];
+			cells[i] = cells[j];
+			cells[j] = cell;
+		}
+		for (int i = 0; i < numBoxes; i++)
+			boxes[cells[i] >> 6] |= 1L << cells[i];
+		return new Board(layout, boxes, cells[numBoxes]);
+	}
+}
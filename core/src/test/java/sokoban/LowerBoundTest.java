@@ -0,0 +1,75 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link LowerBound#update(int, int)} and {@link LowerBound#peek(int, int)}
+ * against computing the bound afresh
+ */
+class LowerBoundTest {
+
+	@Test
+	void updateMatchesCompute() {
+		Random random = new Random(2);
+		for (String level : Levels.ALL) {
+			Board start = Levels.start(level);
+			Layout layout = start.getLayout();
+			int[] floor = Levels.floor(start);
+			for (int trial = 0; trial < 200; trial++) {
+				int numBoxes = 1 + random.nextInt(Math.min(layout.getNumTargets(), floor.length - 1));
+				Board board = Levels.random(layout, floor, numBoxes, random);
+				LowerBound bound = new LowerBound(layout);
+				bound.compute(board);
+				for (int move = 0; move < 50; move++) {
+					int from = box(board, random);
+					int to = floor[random.nextInt(floor.length)];
+					if (board.hasBox(to))
+						continue;
+					board.setBox(from, false);
+					board.setBox(to, true);
+					int expected = new LowerBound(layout).compute(board);
+					assertEquals(expected, bound.update(from, to), "box " + from + " to " + to + "\n" + board);
+					assertEquals(expected, bound.get());
+				}
+			}
+		}
+	}
+
+	@Test
+	void peekLeavesBound() {
+		Random random = new Random(3);
+		for (String level : Levels.ALL) {
+			Board start = Levels.start(level);
+			Layout layout = start.getLayout();
+			int[] floor = Levels.floor(start);
+			for (int trial = 0; trial < 200; trial++) {
+				int numBoxes = 1 + random.nextInt(Math.min(layout.getNumTargets(), floor.length - 1));
+				Board board = Levels.random(layout, floor, numBoxes, random);
+				LowerBound bound = new LowerBound(layout);
+				int before = bound.compute(board);
+				int from = box(board, random);
+				int to = floor[random.nextInt(floor.length)];
+				if (board.hasBox(to))
+					continue;
+				Board after = new Board(board);
+				after.setBox(from, false);
+				after.setBox(to, true);
+				assertEquals(new LowerBound(layout).compute(after), bound.peek(from, to));
+				assertEquals(before, bound.get());
+				assertEquals(new LowerBound(layout).compute(after), bound.update(from, to));
+			}
+		}
+	}
+
+	private static int box(Board board, Random random) {
+		int skip = random.nextInt(board.numBoxes());
+		int box = board.nextBox(0);
+		while (skip-- > 0)
+			box = board.nextBox(box + 1);
+		return box;
+	}
+}
@@ -0,0 +1,67 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The move engine's counts after a scripted game; run with
+ * -Dsokoban.metrics=true, as the core build's metrics execution does
+ */
+class MetricsTest {
+
+	@BeforeEach
+	void enabled() {
+		assumeTrue(Metrics.isEnabled(), "metrics are off");
+		Metrics.reset();
+	}
+
+	@Test
+	void countsScriptedGame() {
+		Sokoban puzzle = new Sokoban(CORRIDOR);
+		assertCounts(0, 0, 0, 0);
+		assertTrue(puzzle.canMove(Direction.EAST));
+		assertFalse(puzzle.canMove(Direction.WEST));
+		assertCounts(2, 0, 0, 0);
+		puzzle.move(Direction.EAST); // a walk
+		assertCounts(3, 1, 0, 0);
+		puzzle.move(Direction.EAST); // a push, onto the target
+		assertCounts(4, 2, 1, 0);
+		puzzle.undo();
+		assertCounts(4, 2, 1, 0);
+		puzzle.redo();
+		assertCounts(4, 3, 2, 0);
+		puzzle.clear();
+		assertCounts(4, 3, 2, 1);
+	}
+
+	@Test
+	void clearCountsOnce() {
+		Sokoban puzzle = new Sokoban(Levels.CLASSIC);
+		puzzle.move(Direction.NORTH);
+		puzzle.move(Direction.WEST);
+		puzzle.clear();
+		assertEquals(1, Metrics.getResets());
+		puzzle.clear(); // already at the start, but still a reset
+		assertEquals(2, Metrics.getResets());
+		new Sokoban(Levels.CLASSIC);
+		assertEquals(2, Metrics.getResets(), "building a puzzle is not a reset");
+	}
+
+	private static void assertCounts(long canMove, long moves, long pushes, long resets) {
+		String summary = Metrics.summary();
+		assertEquals(canMove, Metrics.getCanMove(), summary);
+		assertEquals(moves, Metrics.getMoves(), summary);
+		assertEquals(pushes, Metrics.getPushes(), summary);
+		assertEquals(resets, Metrics.getResets(), summary);
+	}
+
+	private static final String CORRIDOR = ""
+			+ "######\n"
+			+ "#@ $.#\n"
+			+ "######\n";
+}
@@ -0,0 +1,75 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The iterative {@link Board#isMoveableBoxLocation(int, int, int, Direction)}
+ * against the recursive search it replaced
+ */
+class MoveableBoxLocationTest {
+
+	@Test
+	void matchesRecursiveSearch() {
+		Random random = new Random(1);
+		Direction[] dirs = Direction.values();
+		for (String level : Levels.ALL) {
+			Board start = Levels.start(level);
+			Layout layout = start.getLayout();
+			int[] floor = Levels.floor(start);
+			for (int trial = 0; trial < 2000; trial++) {
+				int numBoxes = 1 + random.nextInt(floor.length - 1);
+				Board board = Levels.random(layout, floor, numBoxes, random);
+				for (int check = 0; check < 20; check++) {
+					int index = floor[random.nextInt(floor.length)];
+					int origin = floor[random.nextInt(floor.length)];
+					int taboo = random.nextBoolean() ? Layout.NONE : floor[random.nextInt(floor.length)];
+					Direction dir = dirs[random.nextInt(dirs.length)];
+					Set<Integer> visited = new HashSet<>();
+					if (taboo != Layout.NONE)
+						visited.add(taboo);
+					boolean expected = recursive(board, index, origin, dir, visited);
+					assertEquals(expected, board.isMoveableBoxLocation(index, origin, taboo, dir),
+							"cell " + index + " origin " + origin + " taboo " + taboo + " " + dir + "\n" + board);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The search as Cell first wrote it, on a Board
+	 */
+	private static boolean recursive(Board board, int cell, int origin, Direction dir, Set<Integer> visited) {
+		if (!visited.add(cell))
+			return false;
+		Layout layout = board.getLayout();
+		int left = layout.next(cell, dir.left());
+		int right = layout.next(cell, dir.right());
+		if ((left == Layout.NONE) || visited.contains(left) || (right == Layout.NONE) || visited.contains(right))
+			return false;
+		if (room(board, left, origin, dir.left(), visited) && reach(board, right, origin, dir.right(), visited))
+			return true;
+		return room(board, right, origin, dir.right(), visited) && reach(board, left, origin, dir.left(), visited);
+	}
+
+	private static boolean room(Board board, int side, int origin, Direction dir, Set<Integer> visited) {
+		if (isFree(board, side, origin) && board.getLayout().isLive(side))
+			return true;
+		return board.hasBox(side) && recursive(board, side, origin, dir, visited);
+	}
+
+	private static boolean reach(Board board, int side, int origin, Direction dir, Set<Integer> visited) {
+		if (isFree(board, side, origin))
+			return true;
+		return board.hasBox(side) && recursive(board, side, origin, dir, visited);
+	}
+
+	private static boolean isFree(Board board, int index, int origin) {
+		return (index == origin) || (!board.getLayout().isWall(index) && !board.hasBox(index));
+	}
+}
@@ -0,0 +1,73 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * A Position is a snapshot: nothing done to its source, or to what it hands
+ * out, shows through
+ */
+class PositionTest {
+
+	@Test
+	void ignoresLaterMoves() {
+		Sokoban puzzle = new Sokoban(Levels.CLASSIC);
+		Position position = puzzle.toPosition();
+		String before = position.toString();
+		puzzle.move(Direction.NORTH);
+		puzzle.move(Direction.WEST);
+		assertEquals(before, position.toString());
+		assertNotEquals(before, puzzle.toString());
+		assertEquals(new Sokoban(Levels.CLASSIC).getActorCell().getIndex(), position.getActor());
+	}
+
+	@Test
+	void ignoresBoardChanges() {
+		Board board = Levels.start(Levels.THREE_BOXES);
+		Position position = Position.of(board);
+		String before = position.toString();
+		long hash = position.getHash();
+		int box = board.nextBox(0);
+		board.setBox(box, false);
+		board.setActor(box);
+		assertEquals(before, position.toString());
+		assertEquals(hash, position.getHash());
+		assertEquals(3, position.numBoxes());
+
+		Board copy = position.toBoard();
+		copy.setBox(copy.nextBox(0), false);
+		assertEquals(before, position.toString());
+	}
+
+	@Test
+	void movingLeavesPosition() {
+		Position position = new Sokoban(Levels.ONE_BOX).toPosition();
+		String before = position.toString();
+		Position pushed = position.move(Direction.EAST);
+		position.successors();
+		assertEquals(before, position.toString());
+		assertEquals(1, pushed.numOnTarget());
+		assertEquals(0, position.numOnTarget());
+	}
+
+	@Test
+	void equalPositionsHashAlike() {
+		Position position = new Sokoban(Levels.THREE_BOXES).toPosition();
+		Position back = position.move(Direction.EAST).move(Direction.WEST);
+		assertEquals(position, back);
+		assertEquals(position.hashCode(), back.hashCode());
+		assertEquals(position.getHash(), back.getHash());
+		assertEquals(Position.of(position.toBoard()), position);
+		assertEquals(Position.of(position.toBoard()).hashCode(), position.hashCode());
+		Position[] next = position.successors();
+		Position[] again = back.successors();
+		for (Direction dir : Direction.values()) {
+			assertEquals(next[dir.ordinal()], again[dir.ordinal()]);
+			if (next[dir.ordinal()] != null)
+				assertEquals(next[dir.ordinal()].hashCode(), again[dir.ordinal()].hashCode());
+		}
+		assertNotEquals(position, position.move(Direction.EAST));
+	}
+}
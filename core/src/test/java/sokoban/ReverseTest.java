@@ -0,0 +1,94 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reverse mode: walking and pulling are separate moves, so a forward solution
+ * played backwards leads back to the start
+ */
+class ReverseTest {
+
+	@Test
+	void forwardSolutionsReplayBackwards() {
+		for (String level : new String[] { Levels.ONE_BOX, Levels.TWO_BOXES, Levels.THREE_BOXES,
+				Levels.SEVEN_BOXES, Levels.CLASSIC }) {
+			Sokoban puzzle = new Sokoban(level);
+			Solver solver = new Solver(Solver.Mode.PUSH_A_STAR);
+			List<Direction> moves = solver.solve(puzzle);
+			assertNotNull(moves, "no solution\n" + level);
+			List<Boolean> pushes = new ArrayList<>();
+			for (Direction dir : moves) {
+				int ahead = puzzle.getLayout().next(puzzle.getBoard().getActor(), dir);
+				pushes.add(puzzle.getBoard().hasBox(ahead));
+				puzzle.move(dir);
+			}
+			assertTrue(puzzle.onTarget());
+			Sokoban reversed = puzzle.reverse();
+			assertEquals(puzzle.toString(), reversed.toString(), "reverse start\n" + level);
+			for (int move = moves.size() - 1; move >= 0; move--) {
+				Direction back = moves.get(move).reverse();
+				if (pushes.get(move)) {
+					reversed.pull(back);
+				} else {
+					assertTrue(reversed.canMove(back));
+					reversed.move(back);
+				}
+			}
+			assertTrue(reversed.onTarget(), "not back at the start\n" + reversed);
+			assertEquals(new Sokoban(level).toString(), reversed.toString());
+			// and undo takes every move back, pulls included
+			while (reversed.canUndo())
+				reversed.undo();
+			assertEquals(puzzle.toString(), reversed.toString());
+		}
+	}
+
+	@Test
+	void moveOnlyWalks() {
+		Sokoban puzzle = new Sokoban(Levels.ONE_BOX);
+		puzzle.move(Direction.EAST);
+		Sokoban reversed = puzzle.reverse(); // the box on its target, the actor beside it
+		assertTrue(reversed.canPull(Direction.WEST));
+		reversed.move(Direction.WEST);
+		assertEquals(1, reversed.getBoard().numOnTarget());
+		reversed.undo();
+		reversed.pull(Direction.WEST);
+		assertEquals(0, reversed.getBoard().numOnTarget());
+		reversed.undo();
+		reversed.redo();
+		assertEquals(0, reversed.getBoard().numOnTarget());
+		assertFalse(puzzle.canPull(Direction.WEST));
+	}
+
+	@Test
+	void solvedOnlyIfActorCanWalkBack() {
+		// the box starts on its target, in the only way out of the actor's corner
+		Sokoban pocket = new Sokoban(""
+				+ "#######\n"
+				+ "#@*   #\n"
+				+ "###   #\n"
+				+ "  #####\n");
+		pocket.move(Direction.EAST);
+		pocket.move(Direction.EAST);
+		Sokoban reversed = pocket.reverse(); // box back on the start cell, actor east of it
+		assertEquals(1, reversed.getBoard().numOnTarget());
+		assertFalse(reversed.onTarget(), "the actor is cut off from the start\n" + reversed);
+
+		Sokoban room = new Sokoban(""
+				+ "#######\n"
+				+ "#@*   #\n"
+				+ "#     #\n"
+				+ "#######\n");
+		room.move(Direction.EAST);
+		room.move(Direction.EAST);
+		assertTrue(room.reverse().onTarget(), "the actor can walk round the box");
+	}
+}
@@ -0,0 +1,51 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Playouts are repeatable from a seed, and a policy must keep to the legal
+ * moves
+ */
+class RolloutsTest {
+
+	@Test
+	void seedRepeats() {
+		for (int parallelism : new int[] { 1, 3 }) {
+			for (boolean prune : new boolean[] { false, true }) {
+				RolloutStats first = run(parallelism, prune, 42);
+				RolloutStats second = run(parallelism, prune, 42);
+				String what = "parallelism " + parallelism + " prune " + prune;
+				assertEquals(500, first.getPlayouts(), what);
+				assertEquals(first.getPlayouts(), second.getPlayouts(), what);
+				assertEquals(first.getSolved(), second.getSolved(), what);
+				assertEquals(first.getStuck(), second.getStuck(), what);
+				assertEquals(first.getMeanMoves(), second.getMeanMoves(), what);
+				assertArrayEquals(first.getOnTargetHistogram(), second.getOnTargetHistogram(), what);
+			}
+		}
+	}
+
+	@Test
+	void rejectsIllegalChoice() {
+		for (int parallelism : new int[] { 1, 2 }) {
+			Rollouts rollouts = new Rollouts(new Sokoban(Levels.ONE_BOX)); // only east is legal
+			rollouts.setParallelism(parallelism);
+			rollouts.setPolicy((board, legalMoves, rnd) -> Direction.WEST.ordinal());
+			assertThrows(IllegalStateException.class, () -> rollouts.run(10, 1));
+			rollouts.setPolicy((board, legalMoves, rnd) -> 7);
+			assertThrows(IllegalStateException.class, () -> rollouts.run(10, 1));
+		}
+	}
+
+	private static RolloutStats run(int parallelism, boolean prune, long seed) {
+		Rollouts rollouts = new Rollouts(new Sokoban(Levels.THREE_BOXES));
+		rollouts.setParallelism(parallelism);
+		rollouts.setPruneDeadlocks(prune);
+		rollouts.setDepth(200);
+		return rollouts.run(500, seed);
+	}
+}
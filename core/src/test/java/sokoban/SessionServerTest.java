@@ -0,0 +1,63 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Sessions end when their clients go quiet, in process and over sockets
+ */
+@Timeout(30)
+class SessionServerTest {
+
+	@Test
+	void playsInProcess() {
+		try (SessionServer server = new SessionServer(() -> new Sokoban(Levels.ONE_BOX))) {
+			SessionServer.Connection connection = server.connect();
+			assertEquals("OK ready", last(connection.reply()));
+			assertEquals("OK game won!", last(connection.exchange("E")));
+			assertEquals("BYE", last(connection.exchange("Quit")));
+			assertNull(connection.receive());
+			connection.close();
+		}
+	}
+
+	@Test
+	void idleConnectionEnds() {
+		try (SessionServer server = new SessionServer(() -> new Sokoban(Levels.ONE_BOX))) {
+			server.setIdleTimeout(200);
+			SessionServer.Connection connection = server.connect();
+			assertEquals("OK ready", last(connection.reply()));
+			assertNull(connection.receive());
+			connection.close();
+		}
+	}
+
+	@Test
+	void idleSocketIsClosed() throws IOException {
+		try (SessionServer server = new SessionServer(() -> new Sokoban(Levels.ONE_BOX))) {
+			server.setIdleTimeout(200);
+			int port = server.listen(0);
+			try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+				InputStream in = socket.getInputStream();
+				int read = 0;
+				while (in.read() >= 0)
+					read++;
+				assertTrue(read > 0);
+			}
+		}
+	}
+
+	private static String last(List<String> lines) {
+		return lines.get(lines.size() - 1);
+	}
+}
@@ -0,0 +1,100 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Replaying LURD solutions: legal, illegal, and unfinished ones, singly and
+ * in bulk
+ */
+class SolutionVerifierTest {
+
+	@Test
+	void acceptsSolution() {
+		SolutionVerifier.Result result = new SolutionVerifier(1).verify(new Sokoban(CORRIDOR), "rR");
+		assertTrue(result.isValid());
+		assertTrue(result.isSolved());
+		assertEquals(-1, result.getFailedStep());
+		assertEquals(2, result.getMoves());
+		assertEquals(1, result.getPushes());
+		assertNull(result.getDetail());
+	}
+
+	@Test
+	void strictChecksCase() {
+		SolutionVerifier verifier = new SolutionVerifier(1);
+		assertTrue(verifier.verify(new Sokoban(CORRIDOR), "rr").isSolved());
+		assertTrue(verifier.verify(new Sokoban(CORRIDOR), "RR").isSolved());
+		verifier.setStrict(true);
+		SolutionVerifier.Result unmarked = verifier.verify(new Sokoban(CORRIDOR), "rr");
+		assertFalse(unmarked.isValid());
+		assertEquals(1, unmarked.getFailedStep());
+		assertEquals(1, unmarked.getMoves());
+		SolutionVerifier.Result marked = verifier.verify(new Sokoban(CORRIDOR), "RR");
+		assertFalse(marked.isValid());
+		assertEquals(0, marked.getFailedStep());
+		assertEquals(0, marked.getMoves());
+	}
+
+	@Test
+	void reportsBumpIntoWall() {
+		Sokoban puzzle = new Sokoban(CORRIDOR);
+		SolutionVerifier.Result result = new SolutionVerifier(1).verify(puzzle, "r u R");
+		assertFalse(result.isValid());
+		assertFalse(result.isSolved());
+		assertEquals(2, result.getFailedStep()); // an offset in the text, spaces included
+		assertEquals(1, result.getMoves());
+		assertNotNull(result.getDetail());
+		assertEquals(new Sokoban(CORRIDOR).toString(), puzzle.toString(), "the puzzle is left as it was");
+	}
+
+	@Test
+	void validButUnsolved() {
+		SolutionVerifier.Result result = new SolutionVerifier(1).verify(new Sokoban(CORRIDOR), "r");
+		assertTrue(result.isValid());
+		assertFalse(result.isSolved());
+		assertEquals(1, result.getMoves());
+		assertEquals(0, result.getPushes());
+	}
+
+	@Test
+	void verifyAllKeepsOrder() {
+		String[] levels = { Levels.ONE_BOX, Levels.TWO_BOXES, Levels.THREE_BOXES, Levels.SEVEN_BOXES };
+		String[] solutions = new String[levels.length];
+		for (int i = 0; i < levels.length; i++) {
+			Sokoban puzzle = new Sokoban(levels[i]);
+			solutions[i] = Solver.toLurd(puzzle.toBoard(), new Solver(Solver.Mode.PUSH_A_STAR).solve(puzzle));
+		}
+		List<String> screens = new ArrayList<>();
+		List<String> lurds = new ArrayList<>();
+		List<Boolean> expected = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			int level = i % levels.length;
+			int solution = (i / levels.length) % levels.length; // mostly the wrong level's
+			screens.add(levels[level]);
+			lurds.add(solutions[solution]);
+			expected.add(new SolutionVerifier(1).verify(new Sokoban(levels[level]), solutions[solution]).isSolved());
+		}
+		List<SolutionVerifier.Result> results = new SolutionVerifier(4).verifyAll(screens, lurds);
+		assertEquals(screens.size(), results.size());
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals(i, results.get(i).getIndex());
+			assertEquals(expected.get(i), results.get(i).isSolved(), "pair " + i);
+		}
+		assertTrue(results.get(0).isSolved());
+		assertFalse(results.get(1).isSolved());
+	}
+
+	private static final String CORRIDOR = ""
+			+ "######\n"
+			+ "#@ $.#\n"
+			+ "######\n";
+}
@@ -0,0 +1,80 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Every solver mode on the fixture levels, each solution checked by
+ * replaying it, and the limits that stop a solve
+ */
+@Timeout(120)
+class SolverTest {
+
+	@Test
+	void everyModeSolves() {
+		SolutionVerifier verifier = new SolutionVerifier(1);
+		for (Solver.Mode mode : Solver.Mode.values()) {
+			for (String level : SOLVABLE) {
+				Sokoban puzzle = new Sokoban(level);
+				Solver solver = new Solver(mode);
+				List<Direction> moves = solver.solve(puzzle);
+				assertNotNull(moves, mode + " found no solution\n" + level);
+				assertEquals(Solver.Status.SOLVED, solver.getStatus());
+				String lurd = Solver.toLurd(puzzle.toBoard(), moves);
+				assertTrue(verifier.verify(puzzle, lurd).isSolved(), mode + " solution fails: " + lurd + "\n" + level);
+			}
+		}
+	}
+
+	@Test
+	void moveSearchesAgreeOnLength() {
+		for (String level : SOLVABLE) {
+			List<Direction> aStar = new Solver(Solver.Mode.A_STAR).solve(new Sokoban(level));
+			List<Direction> idaStar = new Solver(Solver.Mode.IDA_STAR).solve(new Sokoban(level));
+			assertEquals(aStar.size(), idaStar.size(), level);
+		}
+	}
+
+	@Test
+	void stopsAtNodeLimit() {
+		Solver solver = new Solver(Solver.Mode.A_STAR);
+		solver.setNodeLimit(5);
+		assertNull(solver.solve(new Sokoban(Levels.CLASSIC)));
+		assertEquals(Solver.Status.NODE_LIMIT, solver.getStatus());
+	}
+
+	@Test
+	void cancelBeforeSolveCounts() {
+		Solver solver = new Solver(Solver.Mode.A_STAR);
+		solver.cancel();
+		assertNull(solver.solve(new Sokoban(Levels.CLASSIC)));
+		assertEquals(Solver.Status.CANCELLED, solver.getStatus());
+		assertNotNull(solver.solve(new Sokoban(Levels.ONE_BOX)), "the cancel is used up");
+	}
+
+	@Test
+	void reportsUnsolvable() {
+		for (Solver.Mode mode : Solver.Mode.values()) {
+			Solver solver = new Solver(mode);
+			assertNull(solver.solve(new Sokoban(UNSOLVABLE)), mode.toString());
+			assertEquals(Solver.Status.UNSOLVABLE, solver.getStatus(), mode.toString());
+		}
+	}
+
+	private static final String[] SOLVABLE = { Levels.ONE_BOX, Levels.TWO_BOXES, Levels.THREE_BOXES,
+			Levels.SEVEN_BOXES };
+
+	// the box is in a corner, off its target
+	private static final String UNSOLVABLE = ""
+			+ "#####\n"
+			+ "#$ .#\n"
+			+ "#@  #\n"
+			+ "#####\n";
+}
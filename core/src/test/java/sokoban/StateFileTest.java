@@ -0,0 +1,59 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Saving and loading states, and files cut short while being written
+ */
+class StateFileTest {
+
+	@Test
+	void loadsWhatWasSaved() {
+		Sokoban puzzle = new Sokoban(Levels.CLASSIC);
+		for (Direction dir : new Direction[] { Direction.NORTH, Direction.WEST, Direction.WEST, Direction.WEST })
+			puzzle.move(dir);
+		puzzle.undo();
+		File file = dir.resolve("one.sav").toFile();
+		StateFile.save(file, puzzle);
+		Sokoban loaded = StateFile.load(file);
+		assertEquals(puzzle.toString(), loaded.toString());
+		assertEquals(puzzle.numMoves(), loaded.numMoves());
+		loaded.redo();
+		loaded.clear();
+		assertEquals(new Sokoban(Levels.CLASSIC).toString(), loaded.toString());
+	}
+
+	@Test
+	void skipsAndDropsPartialState() throws IOException {
+		File file = dir.resolve("many.sav").toFile();
+		Sokoban puzzle = new Sokoban(Levels.TWO_BOXES);
+		try (StateFile.Writer writer = StateFile.append(file)) {
+			writer.write(puzzle);
+			puzzle.move(Direction.EAST);
+			writer.write(puzzle);
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 3);
+		}
+		StateFile states = new StateFile(file);
+		assertEquals(1, states.size());
+		assertEquals(0, states.getNumMoves(0));
+		try (StateFile.Writer writer = StateFile.append(file)) {
+			writer.write(puzzle);
+		}
+		states = new StateFile(file);
+		assertEquals(2, states.size());
+		assertEquals(puzzle.toString(), states.getSokoban(1).toString());
+	}
+
+	@TempDir
+	Path dir;
+}
@@ -0,0 +1,73 @@
+package sokoban;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The off-heap store against a HashMap, as it grows to its limit
+ */
+class StateStoreTest {
+
+	@Test
+	void matchesHashMap() {
+		Board start = Levels.start(Levels.CLASSIC);
+		Layout layout = start.getLayout();
+		int[] floor = Levels.floor(start);
+		StateStore store = new StateStore(layout, 64L << 20);
+		long empty = store.getMemory();
+		assertTrue(empty < (1 << 20), "memory taken up front: " + empty);
+		Map<Board, Integer> ids = new HashMap<>();
+		List<Board> boards = new ArrayList<>();
+		Random random = new Random(6);
+		for (int i = 0; i < 100_000; i++) {
+			Board board = (i % 4 == 3) ? boards.get(random.nextInt(boards.size()))
+					: Levels.random(layout, floor, start.numBoxes(), random);
+			int g = random.nextInt(100);
+			Integer known = ids.get(board);
+			int id = store.add(board, g, g + 1, StateStore.NONE, i);
+			if (known == null) {
+				assertEquals(boards.size(), id);
+				ids.put(board, id);
+				boards.add(board);
+			} else if (id != StateStore.NONE) {
+				assertEquals((int) known, id);
+				assertEquals(g, store.getG(id));
+			}
+		}
+		assertEquals(boards.size(), store.size());
+		for (int id = 0; id < boards.size(); id++) {
+			assertEquals(boards.get(id), store.getBoard(id));
+			assertEquals(id, store.find(boards.get(id)));
+		}
+		assertTrue(store.getMemory() > empty);
+		assertTrue(store.getMemory() <= (64L << 20));
+	}
+
+	@Test
+	void fillsToItsLimit() {
+		Board start = Levels.start(Levels.CLASSIC);
+		Layout layout = start.getLayout();
+		int[] floor = Levels.floor(start);
+		long limit = 1L << 20;
+		StateStore store = new StateStore(layout, limit);
+		Random random = new Random(7);
+		int added = 0;
+		while (true) {
+			int id = store.add(Levels.random(layout, floor, start.numBoxes(), random), 0, 0, StateStore.NONE, 0);
+			if (id == StateStore.FULL)
+				break;
+			if (id != StateStore.NONE)
+				added++;
+		}
+		assertEquals(store.getMaxSize(), added);
+		assertTrue(store.getMemory() <= limit, "memory " + store.getMemory());
+	}
+}
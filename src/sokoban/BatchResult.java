@@ -0,0 +1,79 @@
+package sokoban;
+
+/**
+ * How one level of a {@link BatchRunner} batch went.
+ */
+public class BatchResult {
+
+	public enum Outcome {
+		SOLVED, UNSOLVED, TIME_LIMIT, NODE_LIMIT, MOVE_LIMIT, FAILED
+	}
+
+	public BatchResult(int level, String title, Outcome outcome, int moves, long nodes, long elapsedNanos,
+			String detail) {
+		if (outcome == null)
+			throw new IllegalArgumentException("outcome cannot be null");
+		this.level = level;
+		this.title = title;
+		this.outcome = outcome;
+		this.moves = moves;
+		this.nodes = nodes;
+		this.elapsedNanos = elapsedNanos;
+		this.detail = detail;
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public Outcome getOutcome() {
+		return outcome;
+	}
+
+	public boolean isSolved() {
+		return outcome == Outcome.SOLVED;
+	}
+
+	/**
+	 * The length of the solution, or the number of moves played
+	 */
+	public int getMoves() {
+		return moves;
+	}
+
+	/**
+	 * The number of positions a solver expanded, or moves a player chose
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedNanos / 1000000L;
+	}
+
+	/**
+	 * The solution in LURD notation, or the reason for a failure, or null
+	 */
+	public String getDetail() {
+		return detail;
+	}
+
+	@Override
+	public String toString() {
+		return (level + 1) + "\t" + title + "\t" + outcome + "\t" + moves + "\t" + nodes + "\t" + getElapsedMillis()
+				+ "ms" + ((detail == null) ? "" : "\t" + detail);
+	}
+
+	private final int level;
+	private final String title;
+	private final Outcome outcome;
+	private final int moves;
+	private final long nodes;
+	private final long elapsedNanos;
+	private final String detail;
+}
@@ -0,0 +1,189 @@
+package sokoban;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Plays or solves many levels at once, headless, one independent puzzle per
+ * task on a work-stealing pool. Each level gets a time budget. Results are
+ * handed to the caller's consumer, on the calling thread, in the order the
+ * levels finish. A level that throws, or overflows the stack, is recorded as
+ * FAILED and the batch goes on; running out of memory aborts the batch with a
+ * SokobanException.
+ */
+public class BatchRunner {
+
+	public BatchRunner() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public BatchRunner(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be positive");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Play each level with a fresh player from the supplier, instead of solving;
+	 * wrap a {@link Player} in a {@link PlayerAdapter}
+	 */
+	public void setPlayer(Supplier<? extends FastPlayer> players) {
+		if (players == null)
+			throw new IllegalArgumentException("players cannot be null");
+		this.players = players;
+		this.solvers = null;
+	}
+
+	/**
+	 * Solve each level with a fresh Solver from the supplier (the default is
+	 * A*)
+	 */
+	public void setSolver(Supplier<Solver> solvers) {
+		if (solvers == null)
+			throw new IllegalArgumentException("solvers cannot be null");
+		this.solvers = solvers;
+		this.players = null;
+	}
+
+	public void setTimeLimit(long millis) {
+		if (millis <= 0)
+			throw new IllegalArgumentException("time limit must be positive");
+		this.timeLimit = millis;
+	}
+
+	/**
+	 * Set the most moves a Player may make on one level
+	 */
+	public void setMoveLimit(int moveLimit) {
+		if (moveLimit <= 0)
+			throw new IllegalArgumentException("moveLimit must be positive");
+		this.moveLimit = moveLimit;
+	}
+
+	public void run(LevelPack pack, Consumer<BatchResult> results) {
+		if (pack == null)
+			throw new IllegalArgumentException("pack cannot be null");
+		run(pack.size(), pack::getLevel, pack::getTitle, results);
+	}
+
+	public void run(List<String> screens, Consumer<BatchResult> results) {
+		if (screens == null)
+			throw new IllegalArgumentException("screens cannot be null");
+		run(screens.size(), level -> new Sokoban(screens.get(level)), level -> "Level " + (level + 1), results);
+	}
+
+	private void run(int numLevels, IntFunction<Sokoban> levels, IntFunction<String> titles,
+			Consumer<BatchResult> results) {
+		if (results == null)
+			throw new IllegalArgumentException("results cannot be null");
+		ExecutorService pool = Executors.newWorkStealingPool(parallelism);
+		ExecutorCompletionService<BatchResult> done = new ExecutorCompletionService<>(pool);
+		try {
+			for (int level = 0; level < numLevels; level++) {
+				final int index = level;
+				done.submit(() -> evaluate(index, levels, titles));
+			}
+			for (int i = 0; i < numLevels; i++)
+				results.accept(done.take().get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SokobanException("batch interrupted");
+		} catch (ExecutionException e) {
+			throw new SokobanException("" + e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private BatchResult evaluate(int level, IntFunction<Sokoban> levels, IntFunction<String> titles) {
+		long start = System.nanoTime();
+		String title = null;
+		try {
+			title = titles.apply(level);
+			Sokoban puzzle = levels.apply(level);
+			if (players != null)
+				return play(level, title, puzzle, players.get(), start);
+			return solve(level, title, puzzle, (solvers == null) ? new Solver() : solvers.get(), start);
+		} catch (Exception | StackOverflowError e) {
+			return new BatchResult(level, title, BatchResult.Outcome.FAILED, 0, 0, System.nanoTime() - start, "" + e);
+		}
+	}
+
+	private BatchResult solve(int level, String title, Sokoban puzzle, Solver solver, long start) {
+		solver.setTimeLimit(timeLimit);
+		Board board = puzzle.toBoard();
+		List<Direction> moves = solver.solve(board);
+		long elapsed = System.nanoTime() - start;
+		if (moves != null)
+			return new BatchResult(level, title, BatchResult.Outcome.SOLVED, moves.size(), solver.getNodes(), elapsed,
+					Solver.toLurd(board, moves));
+		BatchResult.Outcome outcome;
+		switch (solver.getStatus()) {
+		case TIME_LIMIT:
+			outcome = BatchResult.Outcome.TIME_LIMIT;
+			break;
+		case NODE_LIMIT:
+			outcome = BatchResult.Outcome.NODE_LIMIT;
+			break;
+		default:
+			outcome = BatchResult.Outcome.UNSOLVED;
+		}
+		return new BatchResult(level, title, outcome, 0, solver.getNodes(), elapsed, "" + solver.getStatus());
+	}
+
+	private BatchResult play(int level, String title, Sokoban puzzle, FastPlayer player, long start) {
+		long deadline = start + timeLimit * 1000000L;
+		int moves = 0;
+		while (!puzzle.onTarget()) {
+			if (moves >= moveLimit)
+				return new BatchResult(level, title, BatchResult.Outcome.MOVE_LIMIT, moves, moves,
+						System.nanoTime() - start, null);
+			if (((moves & 255) == 0) && (System.nanoTime() - deadline > 0))
+				return new BatchResult(level, title, BatchResult.Outcome.TIME_LIMIT, moves, moves,
+						System.nanoTime() - start, null);
+			int choices = puzzle.legalMoves();
+			if (choices == 0)
+				return new BatchResult(level, title, BatchResult.Outcome.UNSOLVED, moves, moves,
+						System.nanoTime() - start, "stuck");
+			puzzle.move(Direction.of(player.move(choices)));
+			moves++;
+		}
+		return new BatchResult(level, title, BatchResult.Outcome.SOLVED, moves, moves, System.nanoTime() - start,
+				null);
+	}
+
+	/**
+	 * Solve every level in a pack, printing each result as it finishes
+	 * 
+	 * @param args pack file [seconds per level]
+	 */
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.out.println("usage: BatchRunner pack-file [seconds per level]");
+			return;
+		}
+		BatchRunner runner = new BatchRunner();
+		if (args.length > 1)
+			runner.setTimeLimit(Long.parseLong(args[1]) * 1000L);
+		runner.run(new LevelPack(new File(args[0])), System.out::println);
+		if (Metrics.isEnabled())
+			System.out.println(Metrics.summary());
+		DeadlockDatabase.getDefault().save();
+	}
+
+	private final int parallelism;
+	private Supplier<? extends FastPlayer> players = null;
+	private Supplier<Solver> solvers = null;
+	private long timeLimit = DEFAULT_TIME_LIMIT;
+	private int moveLimit = DEFAULT_MOVE_LIMIT;
+
+	private static final long DEFAULT_TIME_LIMIT = 10000L;
+	private static final int DEFAULT_MOVE_LIMIT = 1000000;
+}
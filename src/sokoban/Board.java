@@ -0,0 +1,536 @@
+package sokoban;
+
+import java.util.Arrays;
+
+/**
+ * A compact, primitive representation of a Sokoban position: a shared static
+ * {@link Layout} plus a box bitset and the actor's cell index. Applies the same
+ * move rules as {@link Actor} and {@link Box} without touching the Cell grid,
+ * and also plays in reverse, pulling boxes, for searches back from the goal.
+ */
+public class Board {
+
+	public Board(Sokoban puzzle) {
+		if (puzzle == null)
+			throw new IllegalArgumentException("puzzle cannot be null");
+		layout = puzzle.getLayout();
+		boxes = new long[layout.getNumWords()];
+		int numCols = layout.getNumCols();
+		for (int row = 0; row < layout.getNumRows(); row++)
+			for (int col = 0; col < numCols; col++)
+				if (puzzle.getCell(row, col).hasBox())
+					setBox(row * numCols + col, true);
+		actor = puzzle.getActorCell().getIndex();
+	}
+
+	public Board(Board other) {
+		if (other == null)
+			throw new IllegalArgumentException("other cannot be null");
+		layout = other.layout;
+		boxes = other.boxes.clone();
+		actor = other.actor;
+		boxHash = other.boxHash;
+		numBoxes = other.numBoxes;
+		numOnTarget = other.numOnTarget;
+	}
+
+	/**
+	 * A board on layout with boxes at the cells set in boxes, which it keeps
+	 */
+	Board(Layout layout, long[] boxes, int actor) {
+		if ((layout == null) || (boxes == null))
+			throw new IllegalArgumentException("layout and boxes cannot be null");
+		if (boxes.length != layout.getNumWords())
+			throw new IllegalArgumentException("boxes do not match the layout");
+		if ((actor < 0) || (actor >= layout.getNumCells()) || layout.isWall(actor) || Layout.get(boxes, actor))
+			throw new IllegalArgumentException("invalid actor " + actor);
+		this.layout = layout;
+		this.boxes = boxes;
+		this.actor = actor;
+		long[] walls = layout.getWalls();
+		long[] targets = layout.getTargets();
+		for (int word = 0; word < boxes.length; word++) {
+			if ((boxes[word] & walls[word]) != 0)
+				throw new IllegalArgumentException("box on a wall");
+			numBoxes += Long.bitCount(boxes[word]);
+			numOnTarget += Long.bitCount(boxes[word] & targets[word]);
+		}
+		for (int box = nextBox(0); box != Layout.NONE; box = nextBox(box + 1)) {
+			if (box >= layout.getNumCells())
+				throw new IllegalArgumentException("box beyond the layout");
+			boxHash ^= layout.boxKey(box);
+		}
+	}
+
+	private Board(Layout layout, long[] boxes, int actor, long boxHash, int numBoxes, int numOnTarget) {
+		this.layout = layout;
+		this.boxes = boxes;
+		this.actor = actor;
+		this.boxHash = boxHash;
+		this.numBoxes = numBoxes;
+		this.numOnTarget = numOnTarget;
+	}
+
+	void copyFrom(Board other) {
+		if (other.layout != layout)
+			throw new IllegalArgumentException("other must share this layout");
+		System.arraycopy(other.boxes, 0, boxes, 0, boxes.length);
+		actor = other.actor;
+		boxHash = other.boxHash;
+		numBoxes = other.numBoxes;
+		numOnTarget = other.numOnTarget;
+	}
+
+	Layout getLayout() {
+		return layout;
+	}
+
+	public int getNumRows() {
+		return layout.getNumRows();
+	}
+
+	public int getNumCols() {
+		return layout.getNumCols();
+	}
+
+	public int getActor() {
+		return actor;
+	}
+
+	/**
+	 * The 64-bit Zobrist hash of this position (boxes and actor)
+	 *
+	 * @return hash the position hash
+	 */
+	public long getHash() {
+		return boxHash ^ layout.actorKey(actor);
+	}
+
+	/**
+	 * The 64-bit Zobrist hash of the boxes alone
+	 *
+	 * @return hash the box hash
+	 */
+	public long getBoxHash() {
+		return boxHash;
+	}
+
+	public boolean hasBox(int index) {
+		return Layout.get(boxes, index);
+	}
+
+	/**
+	 * The index of the first box at or after from, or -1 if there is none
+	 */
+	int nextBox(int from) {
+		int word = from >>> 6;
+		if (word >= boxes.length)
+			return Layout.NONE;
+		long bits = boxes[word] & (-1L << from);
+		while (true) {
+			if (bits != 0)
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			if (++word == boxes.length)
+				return Layout.NONE;
+			bits = boxes[word];
+		}
+	}
+
+	long getBoxWord(int word) {
+		return boxes[word];
+	}
+
+	/**
+	 * The index of the first box at or after from that other does not have, or
+	 * -1 if there is none
+	 */
+	int nextBoxNotIn(Board other, int from) {
+		int word = from >>> 6;
+		if (word >= boxes.length)
+			return Layout.NONE;
+		long bits = boxes[word] & ~other.boxes[word] & (-1L << from);
+		while (true) {
+			if (bits != 0)
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			if (++word == boxes.length)
+				return Layout.NONE;
+			bits = boxes[word] & ~other.boxes[word];
+		}
+	}
+
+	public boolean hasWall(int index) {
+		return layout.isWall(index);
+	}
+
+	public boolean isTarget(int index) {
+		return layout.isTarget(index);
+	}
+
+	public int numTargets() {
+		return layout.getNumTargets();
+	}
+
+	public int numBoxes() {
+		return numBoxes;
+	}
+
+	public int numOnTarget() {
+		return numOnTarget;
+	}
+
+	public boolean onTarget() {
+		return numOnTarget == layout.getNumTargets();
+	}
+
+	public boolean canMove(Direction dir) {
+		if (dir == null)
+			throw new IllegalArgumentException("dir cannot be null");
+		if (!Metrics.ENABLED)
+			return isLegal(dir);
+		Metrics.canMove();
+		LegalityCheckEvent event = Metrics.beginCheck();
+		boolean legal = isLegal(dir);
+		event.end(layout, actor, dir, legal);
+		return legal;
+	}
+
+	private boolean isLegal(Direction dir) {
+		int next = layout.next(actor, dir);
+		if ((next == Layout.NONE) || layout.isWall(next))
+			return false;
+		return !hasBox(next) || canPush(next, dir);
+	}
+
+	/**
+	 * The legal moves as a bitmask, with bit dir.ordinal() set if the actor can
+	 * move in direction dir
+	 *
+	 * @return mask the legal move mask, 0 if stuck
+	 */
+	public int legalMoves() {
+		int mask = 0;
+		for (int dir = 0; dir < DIRECTIONS.length; dir++)
+			if (canMove(DIRECTIONS[dir]))
+				mask |= 1 << dir;
+		return mask;
+	}
+
+	public void move(Direction dir) {
+		if (!canMove(dir))
+			throw new IllegalArgumentException("cannot move " + dir);
+		step(dir);
+	}
+
+	/**
+	 * Make a move already known to be legal
+	 *
+	 * @return pushed whether a box was pushed
+	 */
+	boolean step(Direction dir) {
+		int next = layout.next(actor, dir);
+		boolean pushed = hasBox(next);
+		if (pushed) {
+			int beyond = layout.next(next, dir);
+			Layout.clear(boxes, next);
+			Layout.set(boxes, beyond);
+			boxHash ^= layout.boxKey(next) ^ layout.boxKey(beyond);
+			if (layout.isTarget(next))
+				numOnTarget--;
+			if (layout.isTarget(beyond))
+				numOnTarget++;
+		}
+		actor = next;
+		if (Metrics.ENABLED)
+			Metrics.move(pushed);
+		return pushed;
+	}
+
+	/**
+	 * The board after the legal move in direction dir, leaving this one as it
+	 * is. Only a push copies the box bitset; a walk shares it, so this is only
+	 * for boards that are never changed, as in a {@link Position}.
+	 */
+	Board after(Direction dir) {
+		int next = layout.next(actor, dir);
+		boolean pushed = hasBox(next);
+		if (Metrics.ENABLED)
+			Metrics.move(pushed);
+		if (!pushed)
+			return new Board(layout, boxes, next, boxHash, numBoxes, numOnTarget);
+		int beyond = layout.next(next, dir);
+		long[] moved = boxes.clone();
+		Layout.clear(moved, next);
+		Layout.set(moved, beyond);
+		int onTarget = numOnTarget + (layout.isTarget(beyond) ? 1 : 0) - (layout.isTarget(next) ? 1 : 0);
+		return new Board(layout, moved, next, boxHash ^ layout.boxKey(next) ^ layout.boxKey(beyond), numBoxes,
+				onTarget);
+	}
+
+	/**
+	 * Can the actor step in direction dir without pushing anything
+	 */
+	public boolean canWalk(Direction dir) {
+		if (dir == null)
+			throw new IllegalArgumentException("dir cannot be null");
+		int next = layout.next(actor, dir);
+		return (next != Layout.NONE) && !layout.isWall(next) && !hasBox(next);
+	}
+
+	/**
+	 * Reverse play: can the actor step in direction dir, pulling the box behind
+	 * it into the cell it leaves; only if pushing the box back would be a legal
+	 * move
+	 */
+	public boolean canPull(Direction dir) {
+		if (dir == null)
+			throw new IllegalArgumentException("dir cannot be null");
+		int box = layout.next(actor, dir.reverse());
+		return (box != Layout.NONE) && hasBox(box) && canPull(box, dir);
+	}
+
+	public void pull(Direction dir) {
+		if (!canPull(dir))
+			throw new IllegalArgumentException("cannot pull " + dir);
+		pullStep(dir);
+	}
+
+	/**
+	 * Make a pull already known to be legal
+	 */
+	void pullStep(Direction dir) {
+		setBox(layout.next(actor, dir.reverse()), false);
+		setBox(actor, true);
+		actor = layout.next(actor, dir);
+		if (Metrics.ENABLED)
+			Metrics.move(true);
+	}
+
+	/**
+	 * Could the box at box be pulled one step in direction dir, by an actor
+	 * standing next to it on that side
+	 */
+	boolean canPull(int box, Direction dir) {
+		int to = layout.next(box, dir);
+		if ((to == Layout.NONE) || layout.isWall(to) || hasBox(to))
+			return false;
+		int behind = layout.next(to, dir);
+		if ((behind == Layout.NONE) || layout.isWall(behind) || hasBox(behind))
+			return false;
+		// make the pull, ask whether the push back is legal, then take it back
+		int actorWas = actor;
+		Layout.clear(boxes, box);
+		Layout.set(boxes, to);
+		actor = behind;
+		boolean legal = canPush(to, dir.reverse());
+		Layout.clear(boxes, to);
+		Layout.set(boxes, box);
+		actor = actorWas;
+		return legal;
+	}
+
+	void setBox(int index, boolean box) {
+		if (box == hasBox(index))
+			return;
+		int delta = box ? 1 : -1;
+		if (box)
+			Layout.set(boxes, index);
+		else
+			Layout.clear(boxes, index);
+		boxHash ^= layout.boxKey(index);
+		numBoxes += delta;
+		if (layout.isTarget(index))
+			numOnTarget += delta;
+	}
+
+	void setActor(int index) {
+		actor = index;
+	}
+
+	/**
+	 * Can the box at index be pushed one step in direction dir (see
+	 * {@link Box#canMove(Direction)})
+	 */
+	boolean canPush(int box, Direction dir) {
+		int next = layout.next(box, dir);
+		return (next != Layout.NONE) && isEmpty(next) && layout.isLive(next) && isStuckSafe(box, dir);
+	}
+
+	private boolean isEmpty(int index) {
+		return !layout.isWall(index) && !hasBox(index) && (index != actor);
+	}
+
+	private boolean isStuckSafe(int box, Direction dir) {
+		if (Metrics.ENABLED)
+			Metrics.stuckSafe();
+		int next = layout.next(box, dir);
+		if (layout.isTarget(next)) // okay to get stuck on a target
+			return true;
+		int ahead = layout.next(next, dir);
+		int left = layout.next(next, dir.left());
+		int right = layout.next(next, dir.right());
+		boolean aheadBox = (ahead != Layout.NONE) && hasBox(ahead);
+		boolean leftBox = (left != Layout.NONE) && hasBox(left);
+		boolean rightBox = (right != Layout.NONE) && hasBox(right);
+		// might get stuck if we move next to a box ...
+		if (!aheadBox && !leftBox && !rightBox)
+			return true;
+		// ... but not if that box can be moved, or we still can
+		if (aheadBox && (isMoveableBoxLocation(next, box, Layout.NONE, dir)
+				|| isMoveableBoxLocation(ahead, box, next, dir)))
+			return true;
+		if (leftBox && (isMoveableBoxLocation(next, box, Layout.NONE, dir.left())
+				|| isMoveableBoxLocation(left, box, next, dir.left())))
+			return true;
+		if (rightBox && (isMoveableBoxLocation(next, box, Layout.NONE, dir.right())
+				|| isMoveableBoxLocation(right, box, next, dir.right())))
+			return true;
+		return false;
+	}
+
+	/**
+	 * Could a box at index be moved sideways relative to dir, once the box at
+	 * origin has been pushed (see {@link Cell#isMoveableBoxLocation(Cell, Direction)}).
+	 * A box that is in the way counts if it could in turn be moved sideways. The
+	 * search never revisits a cell, or enters taboo (NONE for no taboo). It runs
+	 * on an explicit stack in the thread's Scratch, so it does not allocate.
+	 */
+	boolean isMoveableBoxLocation(int index, int origin, int taboo, Direction dir) {
+		Scratch scratch = layout.scratch();
+		scratch.reset();
+		if (taboo != Layout.NONE)
+			scratch.mark(taboo);
+		int[] cells = scratch.cells;
+		byte[] dirs = scratch.dirs;
+		byte[] steps = scratch.steps;
+		int top = 0;
+		cells[0] = index;
+		dirs[0] = (byte) dir.ordinal();
+		steps[0] = ENTER;
+		boolean value = false; // value of the last term, or of the frame just returned
+		boolean resumed = false;
+		int entered = 0; // for Metrics
+		int depth = 0;
+		frames: while (top >= 0) {
+			int cell = cells[top];
+			Direction d = DIRECTIONS[dirs[top]];
+			int left = layout.next(cell, d.left());
+			int right = layout.next(cell, d.right());
+			int term = steps[top];
+			if (term == ENTER) {
+				// check for loops
+				boolean open = !scratch.isMarked(cell);
+				if (open) {
+					scratch.mark(cell);
+					open = (left != Layout.NONE) && !scratch.isMarked(left) && (right != Layout.NONE)
+							&& !scratch.isMarked(right);
+				}
+				if (!open) {
+					value = false;
+					top--;
+					resumed = true;
+					continue;
+				}
+				term = LEFT_ROOM;
+			}
+			while (true) {
+				if (!resumed) {
+					int side = ((term == LEFT_ROOM) || (term == LEFT_REACH)) ? left : right;
+					boolean room = (term == LEFT_ROOM) || (term == RIGHT_ROOM);
+					if (isFree(side, origin) && (!room || layout.isLive(side))) {
+						value = true;
+					} else if (hasBox(side)) {
+						// the term holds if that box can itself be moved aside
+						steps[top] = (byte) term;
+						top++;
+						cells[top] = side;
+						dirs[top] = (byte) ((side == left) ? d.left() : d.right()).ordinal();
+						steps[top] = ENTER;
+						if (Metrics.ENABLED) {
+							entered++;
+							depth = Math.max(depth, top);
+						}
+						continue frames;
+					} else {
+						value = false;
+					}
+				}
+				resumed = false;
+				if (value && ((term == LEFT_ROOM) || (term == RIGHT_ROOM)))
+					term++; // room to move into, now can the actor get behind
+				else if (!value && ((term == LEFT_ROOM) || (term == RIGHT_REACH)))
+					term = RIGHT_ROOM; // could not move left, try right
+				else
+					break;
+			}
+			top--; // return value to the caller's term
+			resumed = true;
+		}
+		if (Metrics.ENABLED)
+			Metrics.moveableBoxLocation(entered + 1, depth + 1);
+		return value;
+	}
+
+	private boolean isFree(int index, int origin) {
+		return (index == origin) || (!layout.isWall(index) && !hasBox(index));
+	}
+
+	public Sokoban toSokoban() {
+		return new Sokoban(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if ((obj == null) || !(obj instanceof Board))
+			return false;
+		Board other = (Board) obj;
+		return (layout == other.layout) && (actor == other.actor) && (boxHash == other.boxHash)
+				&& Arrays.equals(boxes, other.boxes);
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(getHash());
+	}
+
+	@Override
+	public String toString() {
+		int numRows = layout.getNumRows();
+		int numCols = layout.getNumCols();
+		StringBuilder b = new StringBuilder(numRows * (numCols + 1));
+		for (int row = 0; row < numRows; row++) {
+			for (int col = 0; col < numCols; col++)
+				b.append(getDisplay(row * numCols + col));
+			b.append('\n');
+		}
+		return b.toString();
+	}
+
+	private char getDisplay(int index) {
+		boolean target = layout.isTarget(index);
+		if (layout.isWall(index))
+			return Sokoban.WALL;
+		else if (hasBox(index))
+			return target ? Sokoban.TARGET_BOX : Sokoban.BOX;
+		else if (index == actor)
+			return target ? Sokoban.TARGET_ACTOR : Sokoban.ACTOR;
+		else
+			return target ? Sokoban.TARGET : Sokoban.EMPTY;
+	}
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	// terms of isMoveableBoxLocation: could move left (room on the left, actor
+	// reaches the right), else could move right (the mirror image)
+	private static final byte LEFT_ROOM = 0;
+	private static final byte RIGHT_REACH = 1;
+	private static final byte RIGHT_ROOM = 2;
+	private static final byte LEFT_REACH = 3;
+	private static final byte ENTER = 4;
+
+	private final Layout layout;
+	private final long[] boxes;
+	private int actor;
+	private long boxHash = 0;
+	private int numBoxes = 0;
+	private int numOnTarget = 0;
+}
@@ -23,6 +23,8 @@ public class Box extends Occupant {
 
 	@Override
 	public boolean isStuckSafe(Direction dir) {
+		if (Metrics.ENABLED)
+			Metrics.stuckSafe();
 		Cell next = cell.getCell(dir);
 		if (next == null)
 			throw new SokobanException("next cannot be null");
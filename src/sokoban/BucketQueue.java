@@ -0,0 +1,155 @@
+package sokoban;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A priority queue of int values, such as {@link StateStore} ids, with small
+ * int priorities, such as A* f costs. Each priority has a bucket, a chain of
+ * fixed-size chunks drawn from a pool in direct ByteBuffers; the lowest
+ * non-empty bucket is served first, last in first out, which favours the
+ * deepest of equally promising nodes. Adding and polling are O(1), apart from
+ * stepping over empty buckets. The pool takes memory as it needs it, a
+ * segment of chunks at a time, up to the memory it is given: once every
+ * chunk is in use, add refuses.
+ */
+public class BucketQueue {
+
+	public BucketQueue(long maxBytes) {
+		long chunks = Math.min(maxBytes / CHUNK_BYTES, MAX_CHUNKS);
+		if (chunks < 1)
+			throw new IllegalArgumentException("maxBytes too small for one chunk");
+		numChunks = (int) chunks;
+		Arrays.fill(heads, NONE);
+	}
+
+	/**
+	 * Add value at priority, 0 or more
+	 *
+	 * @return added false if there is no memory left
+	 */
+	public boolean add(int value, int priority) {
+		if (priority < 0)
+			throw new IllegalArgumentException("priority cannot be negative");
+		if (priority >= heads.length) {
+			int length = heads.length;
+			heads = Arrays.copyOf(heads, Math.max(priority + 1, length * 2));
+			Arrays.fill(heads, length, heads.length, NONE);
+		}
+		int chunk = heads[priority];
+		if ((chunk == NONE) || (count(chunk) == CHUNK_VALUES)) {
+			int fresh = allocate();
+			if (fresh == NONE)
+				return false;
+			buffer(fresh).putInt(offset(fresh) + NEXT, chunk);
+			buffer(fresh).putInt(offset(fresh) + COUNT, 0);
+			heads[priority] = chunk = fresh;
+		}
+		ByteBuffer buffer = buffer(chunk);
+		int at = offset(chunk);
+		int count = buffer.getInt(at + COUNT);
+		buffer.putInt(at + VALUES + count * 4, value);
+		buffer.putInt(at + COUNT, count + 1);
+		if (priority < min)
+			min = priority;
+		size++;
+		return true;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The lowest priority of any value
+	 */
+	public int peekPriority() {
+		if (size == 0)
+			throw new IllegalStateException("queue is empty");
+		while (heads[min] == NONE)
+			min++;
+		return min;
+	}
+
+	/**
+	 * Remove a value of the lowest priority, the last one added
+	 */
+	public int poll() {
+		int priority = peekPriority();
+		int chunk = heads[priority];
+		ByteBuffer buffer = buffer(chunk);
+		int at = offset(chunk);
+		int count = buffer.getInt(at + COUNT) - 1;
+		int value = buffer.getInt(at + VALUES + count * 4);
+		if (count == 0) {
+			heads[priority] = buffer.getInt(at + NEXT);
+			buffer.putInt(at + NEXT, free);
+			free = chunk;
+		} else {
+			buffer.putInt(at + COUNT, count);
+		}
+		size--;
+		return value;
+	}
+
+	/**
+	 * The memory held so far, in bytes
+	 */
+	public long getMemory() {
+		long memory = 0;
+		for (int segment = 0; segment < numSegments; segment++)
+			memory += segments[segment].capacity();
+		return memory;
+	}
+
+	private int allocate() {
+		if (free != NONE) {
+			int chunk = free;
+			free = buffer(chunk).getInt(offset(chunk) + NEXT);
+			return chunk;
+		}
+		if (used == numChunks)
+			return NONE;
+		if (used / CHUNKS_PER_SEGMENT == numSegments) {
+			if (numSegments == segments.length)
+				segments = Arrays.copyOf(segments, numSegments * 2);
+			int inSegment = Math.min(CHUNKS_PER_SEGMENT, numChunks - used);
+			segments[numSegments++] = ByteBuffer.allocateDirect(inSegment * CHUNK_BYTES);
+		}
+		return used++;
+	}
+
+	private int count(int chunk) {
+		return buffer(chunk).getInt(offset(chunk) + COUNT);
+	}
+
+	private ByteBuffer buffer(int chunk) {
+		return segments[chunk / CHUNKS_PER_SEGMENT];
+	}
+
+	private static int offset(int chunk) {
+		return (chunk % CHUNKS_PER_SEGMENT) * CHUNK_BYTES;
+	}
+
+	private static final int NONE = -1;
+	private static final int CHUNK_BYTES = 1024;
+	private static final int NEXT = 0; // chunk layout: next chunk, count, values
+	private static final int COUNT = 4;
+	private static final int VALUES = 8;
+	private static final int CHUNK_VALUES = (CHUNK_BYTES - VALUES) / 4;
+	private static final int CHUNKS_PER_SEGMENT = 256; // taken together, as needed
+	private static final long MAX_CHUNKS = Integer.MAX_VALUE;
+
+	private final int numChunks;
+	private ByteBuffer[] segments = new ByteBuffer[16];
+	private int numSegments = 0;
+	private int[] heads = new int[64]; // first chunk of each priority's bucket
+	private int min = Integer.MAX_VALUE; // no non-empty bucket is lower
+	private int used = 0; // chunks ever handed out
+	private int free = NONE; // chunks given back, linked through NEXT
+	private int size = 0;
+}
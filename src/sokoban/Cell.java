@@ -23,11 +23,11 @@ public class Cell implements Comparable<Cell> {
 
 	@Override
 	public int compareTo(Cell other) {
-		// consider row and col only
-		if ((row < other.row) || (col < other.col))
-			return -1;
-		else if ((row > other.row) || (col > other.col))
-			return 1;
+		// consider row and col only, in row-major order
+		if (row != other.row)
+			return (row < other.row) ? -1 : 1;
+		else if (col != other.col)
+			return (col < other.col) ? -1 : 1;
 		else
 			return 0;
 	}
@@ -43,6 +43,11 @@ public class Cell implements Comparable<Cell> {
 			return false;
 	}
 
+	@Override
+	public int hashCode() {
+		return 31 * row + col;
+	}
+
 	public int getRow() {
 		return row;
 	}
@@ -51,17 +56,18 @@ public class Cell implements Comparable<Cell> {
 		return col;
 	}
 
-	void setDisplay(char display) {
-		this.target = (display == Sokoban.TARGET || display == Sokoban.TARGET_BOX || display == Sokoban.TARGET_ACTOR)
-				? true
-				: false;
-		this.occ = (display == Sokoban.EMPTY || display == Sokoban.TARGET) ? null : Occupant.getInstance(display, this);
+	int getIndex() {
+		return row * puzzle.getNumCols() + col;
 	}
 
 	public char getDisplay() {
 		return toString().charAt(0);
 	}
 
+	Occupant getOccupant() {
+		return occ;
+	}
+
 	void setOccupant(Occupant occ) {
 		this.occ = occ;
 		if (occ != null)
@@ -109,26 +115,15 @@ public class Cell implements Comparable<Cell> {
 		return num;
 	}
 
+	/**
+	 * Can a box stand here without the puzzle becoming unsolvable, considering
+	 * walls only. Looks up the live square map worked out when the puzzle was
+	 * created, which also rules out dead squares that are not corners.
+	 * 
+	 * @return safe false for walls and dead squares
+	 */
 	public boolean isWallSafe() {
-		if (hasWall())
-			return false;
-		else if (isTarget())
-			return true;
-		else if (numAdjacentWalls() >= 3)
-			return false;
-		else if (numAdjacentWalls() == 2) {
-			// two parallel Walls
-			Cell north = getCell(Direction.NORTH);
-			Cell south = getCell(Direction.SOUTH);
-			Cell east = getCell(Direction.EAST);
-			Cell west = getCell(Direction.WEST);
-			if (((north != null) && north.hasWall() && (south != null) && south.hasWall())
-					|| ((east != null) && east.hasWall() && (west != null) && west.hasWall()))
-				return true;
-			else // two Walls at 90 degrees
-				return false;
-		} else // only one or zero adjacent Walls
-			return true;
+		return puzzle.getLayout().isLive(getIndex());
 	}
 
 	public boolean isStuckSafe(Direction dir) {
@@ -138,8 +133,7 @@ public class Cell implements Comparable<Cell> {
 	public boolean isMoveableBoxLocation(Cell origin, Direction dir) {
 		if (origin == null)
 			throw new IllegalArgumentException("origin cannot be null");
-		TreeSet<Cell> visited = new TreeSet<Cell>();
-		return isMoveableBoxLocation(origin, dir, visited);
+		return puzzle.getBoard().isMoveableBoxLocation(getIndex(), origin.getIndex(), Layout.NONE, dir);
 	}
 
 	public boolean isMoveableBoxLocation(Cell origin, Cell taboo, Direction dir) {
@@ -149,41 +143,7 @@ public class Cell implements Comparable<Cell> {
 			throw new IllegalArgumentException("taboo cannot be null");
 		if (taboo.equals(this))
 			throw new IllegalArgumentException("taboo cannot be this cell");
-		TreeSet<Cell> visited = new TreeSet<Cell>();
-		visited.add(taboo);
-		return isMoveableBoxLocation(origin, dir, visited);
-	}
-
-	private boolean isMoveableBoxLocation(Cell origin, Direction dir, TreeSet<Cell> visited) {
-		if (origin == null)
-			throw new IllegalArgumentException("origin cannot be null");
-		if (visited == null)
-			throw new IllegalArgumentException("visited cannot be null");
-		Cell left = getCell(dir.left());
-		Cell right = getCell(dir.right());
-
-		// check for loops
-		if (visited.contains(this))
-			return false;
-		visited.add(this);
-		boolean visitedLeft = visited.contains(left);
-		boolean visitedRight = visited.contains(right);
-
-		// could move left
-		if ((left != null) && (!visitedLeft)
-				&& (((left.isEmpty() || left.hasActor() || left.equals(origin)) && left.isWallSafe())
-						|| (left.hasBox() && left.isMoveableBoxLocation(origin, dir.left(), visited)))
-				&& (right != null) && (!visitedRight) && (right.isEmpty() || right.hasActor() || right.equals(origin)
-						|| (right.hasBox() && right.isMoveableBoxLocation(origin, dir.right(), visited))))
-			return true;
-		// could move right
-		else if ((right != null) && (!visitedRight)
-				&& (((right.isEmpty() || right.hasActor() || right.equals(origin)) && right.isWallSafe())
-						|| (right.hasBox() && right.isMoveableBoxLocation(origin, dir.right(), visited)))
-				&& (left != null) && (!visitedLeft) && (left.isEmpty() || left.hasActor() || left.equals(origin)
-						|| (left.hasBox() && left.isMoveableBoxLocation(origin, dir.left(), visited))))
-			return true;
-		return false;
+		return puzzle.getBoard().isMoveableBoxLocation(getIndex(), origin.getIndex(), taboo.getIndex(), dir);
 	}
 
 	public boolean canMove(Direction dir) {
@@ -0,0 +1,251 @@
+package sokoban;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Deadlocks proven once and remembered from run to run, consulted by
+ * {@link Deadlocks} before it proves anything itself. Two kinds are kept:
+ * freeze patterns, packed from the walls, boxes, targets and dead squares
+ * around a box (see {@link Deadlocks#pattern(Board, int)}), which hold in any
+ * level; and corrals, keyed by the level's layout and the corral's boxes. The
+ * file is a header and two sorted runs of longs. The default database is
+ * loaded from the file named by the system property sokoban.deadlocks, if
+ * set. Lookups need no lock and may run alongside additions.
+ */
+public class DeadlockDatabase {
+
+	/**
+	 * An empty database, not tied to a file
+	 */
+	public DeadlockDatabase() {
+		this.file = null;
+	}
+
+	/**
+	 * The database stored in file, or an empty one if there is no such file
+	 * yet; save() writes it back
+	 */
+	public DeadlockDatabase(File file) {
+		if (file == null)
+			throw new IllegalArgumentException("file cannot be null");
+		this.file = file;
+		if (file.exists())
+			read(file);
+	}
+
+	/**
+	 * The database shared by every Deadlocks that is not given one
+	 */
+	public static synchronized DeadlockDatabase getDefault() {
+		if (defaultDatabase == null) {
+			String name = System.getProperty(PROPERTY);
+			defaultDatabase = (name == null) ? new DeadlockDatabase() : new DeadlockDatabase(new File(name));
+			trace("getDefault: " + defaultDatabase.size() + " entries from " + name);
+		}
+		return defaultDatabase;
+	}
+
+	public boolean containsPattern(long pattern) {
+		return patterns.contains(pattern);
+	}
+
+	public void addPattern(long pattern) {
+		if (patterns.add(pattern))
+			modified = true;
+	}
+
+	boolean containsCorral(Layout layout, long boxHash) {
+		return corrals.contains(corralKey(layout, boxHash));
+	}
+
+	void addCorral(Layout layout, long boxHash) {
+		if (corrals.add(corralKey(layout, boxHash)))
+			modified = true;
+	}
+
+	public int size() {
+		return patterns.size() + corrals.size();
+	}
+
+	/**
+	 * Has anything been added since the database was loaded or saved
+	 */
+	public boolean isModified() {
+		return modified;
+	}
+
+	/**
+	 * Write the database back to the file it was loaded from, if it has one
+	 * and anything was added
+	 */
+	public void save() {
+		if ((file != null) && modified)
+			save(file);
+	}
+
+	/**
+	 * Write the database to file, replacing it in one step
+	 */
+	public synchronized void save(File file) {
+		if (file == null)
+			throw new IllegalArgumentException("file cannot be null");
+		File temp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			patterns.write(out);
+			corrals.write(out);
+		} catch (IOException e) {
+			throw new SokobanException("" + e);
+		}
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new SokobanException("" + e);
+		}
+		modified = false;
+	}
+
+	private void read(File file) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC)
+				throw new SokobanException("not a deadlock database: " + file);
+			int version = in.readInt();
+			if (version != VERSION)
+				throw new SokobanException("unsupported deadlock database version " + version + ": " + file);
+			patterns.read(in);
+			corrals.read(in);
+		} catch (IOException e) {
+			throw new SokobanException("" + e);
+		}
+	}
+
+	/**
+	 * A corral holds only in its own level, so its key mixes in the layout
+	 */
+	private static long corralKey(Layout layout, long boxHash) {
+		long key = layout.getFingerprint() * 0x9e3779b97f4a7c15L + boxHash;
+		key = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+		key = (key ^ (key >>> 27)) * 0x94d049bb133111ebL;
+		return key ^ (key >>> 31);
+	}
+
+	public static void trace(String s) {
+		if (traceOn)
+			System.out.println("trace: " + s);
+	}
+
+	/**
+	 * A set of longs by open addressing. Readers take no lock: each key is a
+	 * single write to one slot, and a grown table is filled before it is
+	 * published.
+	 */
+	private static class LongSet {
+
+		boolean contains(long key) {
+			if (key == EMPTY)
+				return hasEmpty;
+			long[] slots = table;
+			int mask = slots.length - 1;
+			for (int i = spread(key) & mask;; i = (i + 1) & mask) {
+				long slot = slots[i];
+				if (slot == key)
+					return true;
+				if (slot == EMPTY)
+					return false;
+			}
+		}
+
+		synchronized boolean add(long key) {
+			if (contains(key))
+				return false;
+			if (key == EMPTY) {
+				hasEmpty = true;
+			} else {
+				if (2 * (size + 1) > table.length)
+					table = grow(table);
+				insert(table, key);
+			}
+			size++;
+			return true;
+		}
+
+		int size() {
+			return size;
+		}
+
+		synchronized void write(DataOutputStream out) throws IOException {
+			long[] keys = new long[size];
+			int n = 0;
+			if (hasEmpty)
+				keys[n++] = EMPTY;
+			for (long slot : table)
+				if (slot != EMPTY)
+					keys[n++] = slot;
+			Arrays.sort(keys);
+			out.writeInt(keys.length);
+			for (long key : keys)
+				out.writeLong(key);
+		}
+
+		synchronized void read(DataInputStream in) throws IOException {
+			int count = in.readInt();
+			if (count < 0)
+				throw new IOException("bad entry count " + count);
+			for (int i = 0; i < count; i++)
+				add(in.readLong());
+		}
+
+		private static long[] grow(long[] slots) {
+			long[] grown = new long[slots.length * 2];
+			for (long slot : slots)
+				if (slot != EMPTY)
+					insert(grown, slot);
+			return grown;
+		}
+
+		private static void insert(long[] slots, long key) {
+			int mask = slots.length - 1;
+			int i = spread(key) & mask;
+			while (slots[i] != EMPTY)
+				i = (i + 1) & mask;
+			slots[i] = key;
+		}
+
+		private static int spread(long key) {
+			long h = key * 0x9e3779b97f4a7c15L;
+			return (int) (h >>> 32);
+		}
+
+		private static final long EMPTY = 0;
+		private static final int INITIAL_CAPACITY = 1024;
+
+		private volatile long[] table = new long[INITIAL_CAPACITY];
+		private volatile boolean hasEmpty = false;
+		private int size = 0;
+	}
+
+	private static final String PROPERTY = "sokoban.deadlocks";
+	private static final int MAGIC = 0x534b444c; // "SKDL"
+	private static final int VERSION = 1;
+
+	private static DeadlockDatabase defaultDatabase = null;
+
+	private final File file;
+	private final LongSet patterns = new LongSet();
+	private final LongSet corrals = new LongSet();
+	private volatile boolean modified = false;
+
+	private static boolean traceOn = false; // for debugging
+}
@@ -0,0 +1,419 @@
+package sokoban;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Finds positions that can no longer be solved, beyond what the push rules of
+ * {@link Box#canMove(Direction)} already forbid. A box is frozen when it can
+ * move along neither axis: each axis is blocked by a wall, by dead squares on
+ * both sides, or by a box that is itself frozen. A frozen box off target is a
+ * deadlock. A corral is a region the actor cannot reach; it is a deadlock if
+ * the boxes around and inside it cannot all be put on targets even with every
+ * other box taken away, which a small push search decides. Freeze verdicts are
+ * cached by the pattern of boxes around the box, corral verdicts by the
+ * corral's boxes, and proven deadlocks are kept in a {@link DeadlockDatabase}
+ * for later runs. Keeps its own working arrays and caches, so use one per
+ * thread.
+ */
+public class Deadlocks {
+
+	public Deadlocks(Sokoban puzzle) {
+		this(puzzle.getLayout());
+	}
+
+	Deadlocks(Layout layout) {
+		if (layout == null)
+			throw new IllegalArgumentException("layout cannot be null");
+		this.layout = layout;
+		int numCells = layout.getNumCells();
+		marks = new int[numCells];
+		corral = new int[numCells];
+		owner = new int[numCells];
+		cluster = new int[numCells];
+		pushes = new int[4 * numCells];
+		ownRegion = new PushGraph(layout);
+		search = new PushGraph(layout);
+		database = DeadlockDatabase.getDefault();
+	}
+
+	/**
+	 * Set the most push graph nodes one corral check may visit; a corral whose
+	 * check runs out is taken to be safe
+	 */
+	public void setCorralLimit(int corralLimit) {
+		if (corralLimit < 0)
+			throw new IllegalArgumentException("corralLimit cannot be negative");
+		this.corralLimit = corralLimit;
+	}
+
+	/**
+	 * Is board certainly unsolvable: a box off target on a dead square, a
+	 * frozen box off target, or a corral deadlock anywhere
+	 */
+	public boolean isDeadlocked(Board board) {
+		checkLayout(board);
+		for (int box = board.nextBox(0); box != Layout.NONE; box = board.nextBox(box + 1)) {
+			if (layout.isTarget(box))
+				continue;
+			if (!layout.isLive(box) || isFreezeDeadlock(board, box))
+				return true;
+		}
+		return isCorralDeadlock(board, Layout.NONE);
+	}
+
+	/**
+	 * Is board certainly unsolvable, given that it was not before its last
+	 * push, which left a box at box; only the pushed box and the corrals it
+	 * fences are checked
+	 */
+	public boolean isDeadlockedAfterPush(Board board, int box) {
+		checkLayout(board);
+		if (!board.hasBox(box))
+			throw new IllegalArgumentException("no box at " + box);
+		if (!layout.isLive(box) && !layout.isTarget(box))
+			return true;
+		return isFreezeDeadlock(board, box) || isCorralDeadlock(board, box);
+	}
+
+	Layout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Use database to look up deadlocks proven before, and to record new ones;
+	 * null for none. The default is {@link DeadlockDatabase#getDefault()}.
+	 */
+	public void setDatabase(DeadlockDatabase database) {
+		this.database = database;
+	}
+
+	public long getDatabaseHits() {
+		return databaseHits;
+	}
+
+	public long getCacheHits() {
+		return cacheHits;
+	}
+
+	public long getCacheMisses() {
+		return cacheMisses;
+	}
+
+	/**
+	 * Is the box at box part of a frozen group with a box off target
+	 */
+	boolean isFreezeDeadlock(Board board, int box) {
+		long pattern = pattern(board, box);
+		int slot = slot(pattern);
+		if ((freezeKeys[slot] >>> 1) == pattern + 1) {
+			cacheHits++;
+			return (freezeKeys[slot] & 1) != 0;
+		}
+		if ((database != null) && database.containsPattern(pattern)) {
+			databaseHits++;
+			freezeKeys[slot] = ((pattern + 1) << 1) | 1;
+			return true;
+		}
+		cacheMisses++;
+		newGeneration();
+		clusterSize = 0;
+		local = true;
+		center = box;
+		boolean deadlocked = false;
+		if (frozen(board, box)) {
+			for (int i = 0; i < clusterSize; i++)
+				if (!layout.isTarget(cluster[i]))
+					deadlocked = true;
+		}
+		if (local) { // the verdict only depends on the pattern
+			freezeKeys[slot] = ((pattern + 1) << 1) | (deadlocked ? 1 : 0);
+			if (deadlocked && (database != null))
+				database.addPattern(pattern);
+		}
+		return deadlocked;
+	}
+
+	/**
+	 * The walls, boxes, targets and dead squares in the 5x5 window around the
+	 * box, less its corners, which a freeze check never looks at, packed in a
+	 * long: a base 7 digit per cell, after a bit for a target under the box. A
+	 * pattern means the same in every level.
+	 */
+	long pattern(Board board, int box) {
+		int numCols = layout.getNumCols();
+		int row = box / numCols;
+		int col = box % numCols;
+		long pattern = layout.isTarget(box) ? 1 : 0;
+		for (int r = -WINDOW; r <= WINDOW; r++) {
+			for (int c = -WINDOW; c <= WINDOW; c++) {
+				if (((r == 0) && (c == 0)) || ((Math.abs(r) == WINDOW) && (Math.abs(c) == WINDOW)))
+					continue;
+				pattern = pattern * CELL_STATES + state(board, row + r, col + c);
+			}
+		}
+		return pattern;
+	}
+
+	/**
+	 * 0 live floor, 1 dead floor, 2 target, 3 wall, and 4 more for a box
+	 */
+	private int state(Board board, int row, int col) {
+		if ((row < 0) || (row >= layout.getNumRows()) || (col < 0) || (col >= layout.getNumCols()))
+			return WALL_STATE;
+		int index = row * layout.getNumCols() + col;
+		if (layout.isWall(index))
+			return WALL_STATE;
+		int floor = layout.isTarget(index) ? 2 : layout.isLive(index) ? 0 : 1;
+		return board.hasBox(index) ? BOX_STATE + floor : floor;
+	}
+
+	/**
+	 * Boxes in the cluster count as walls, which breaks cycles; a box that
+	 * turns out free takes the boxes it added back out of the cluster
+	 */
+	private boolean frozen(Board board, int box) {
+		int mark = clusterSize;
+		marks[box] = generation;
+		cluster[clusterSize++] = box;
+		if (distance(box) >= WINDOW)
+			local = false; // its neighbours lie outside the window
+		if (blocked(board, box, Direction.WEST, Direction.EAST) && blocked(board, box, Direction.NORTH, Direction.SOUTH))
+			return true;
+		while (clusterSize > mark)
+			marks[cluster[--clusterSize]] = 0;
+		return false;
+	}
+
+	private boolean blocked(Board board, int box, Direction one, Direction other) {
+		int a = layout.next(box, one);
+		int b = layout.next(box, other);
+		if (isWall(a) || isWall(b))
+			return true;
+		if (!layout.isLive(a) && !layout.isLive(b))
+			return true;
+		return (board.hasBox(a) && frozen(board, a)) || (board.hasBox(b) && frozen(board, b));
+	}
+
+	private boolean isWall(int index) {
+		return (index == Layout.NONE) || layout.isWall(index) || (marks[index] == generation);
+	}
+
+	private int distance(int index) {
+		int numCols = layout.getNumCols();
+		return Math.max(Math.abs(index / numCols - center / numCols), Math.abs(index % numCols - center % numCols));
+	}
+
+	/**
+	 * Check each corral, or only those fenced by the box at fence if it is not
+	 * NONE
+	 */
+	boolean isCorralDeadlock(Board board, int fence) {
+		if (corralLimit == 0)
+			return false;
+		ownRegion.reach(board);
+		return isCorralDeadlock(board, fence, ownRegion);
+	}
+
+	/**
+	 * As isCorralDeadlock(board, fence), with the actor's region already found
+	 * by the last call of region.reach(board)
+	 */
+	boolean isCorralDeadlock(Board board, int fence, PushGraph region) {
+		if (corralLimit == 0)
+			return false;
+		this.region = region;
+		newGeneration();
+		if (fence != Layout.NONE) {
+			for (Direction dir : DIRECTIONS) {
+				int cell = layout.next(fence, dir);
+				if ((cell != Layout.NONE) && isCorral(board, cell) && isDeadCorral(board, fill(board, cell)))
+					return true;
+			}
+			return false;
+		}
+		int numCells = layout.getNumCells();
+		for (int cell = 0; cell < numCells; cell++)
+			if (isCorral(board, cell) && isDeadCorral(board, fill(board, cell)))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Is the cell in a corral not yet filled
+	 */
+	private boolean isCorral(Board board, int cell) {
+		return (marks[cell] != generation) && !layout.isWall(cell) && !board.hasBox(cell) && !region.isReachable(cell);
+	}
+
+	/**
+	 * Mark the corral holding start
+	 *
+	 * @return size the number of its cells, stored in corral
+	 */
+	private int fill(Board board, int start) {
+		if (++corralId == 0) {
+			Arrays.fill(owner, 0);
+			corralId = 1;
+		}
+		int size = 0;
+		marks[start] = generation;
+		owner[start] = corralId;
+		corral[size++] = start;
+		for (int head = 0; head < size; head++) {
+			int cell = corral[head];
+			for (Direction dir : DIRECTIONS) {
+				int next = layout.next(cell, dir);
+				if ((next == Layout.NONE) || (marks[next] == generation) || layout.isWall(next) || board.hasBox(next))
+					continue;
+				marks[next] = generation;
+				owner[next] = corralId;
+				corral[size++] = next;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Search pushes on a board holding only the corral's boxes, for one with
+	 * all of them on targets. Only corrals the actor can do nothing about but
+	 * push into are searched: if a fence box can be pushed out, the corral is
+	 * taken to be safe.
+	 */
+	private boolean isDeadCorral(Board board, int size) {
+		Board reduced = new Board(board);
+		for (int box = board.nextBox(0); box != Layout.NONE; box = board.nextBox(box + 1))
+			reduced.setBox(box, false);
+		for (int i = 0; i < size; i++) {
+			for (Direction dir : DIRECTIONS) {
+				int next = layout.next(corral[i], dir);
+				if ((next != Layout.NONE) && board.hasBox(next))
+					reduced.setBox(next, true);
+			}
+		}
+		if (reduced.numOnTarget() == reduced.numBoxes())
+			return false;
+		for (int box = reduced.nextBox(0); box != Layout.NONE; box = reduced.nextBox(box + 1))
+			for (Direction dir : DIRECTIONS)
+				if (region.canPush(board, box, dir) && (owner[layout.next(box, dir)] != corralId))
+					return false;
+		reduced.setActor(search.reach(reduced));
+		long key = reduced.getHash();
+		int slot = slot(key);
+		if ((corralKeys[slot] | 1) == (key | 1)) {
+			cacheHits++;
+			return (corralKeys[slot] & 1) != 0;
+		}
+		if ((database != null) && database.containsCorral(layout, key)) {
+			databaseHits++;
+			corralKeys[slot] = key | 1;
+			return true;
+		}
+		cacheMisses++;
+		boolean dead = solvable(reduced, size) == UNSOLVABLE; // UNKNOWN counts as safe
+		corralKeys[slot] = (key & ~1L) | (dead ? 1 : 0);
+		if (dead && (database != null))
+			database.addCorral(layout, key);
+		return dead;
+	}
+
+	/**
+	 * Breadth-first over the push graph, within corralLimit nodes; once the
+	 * actor can walk into the corral it is no longer a corral, and the search
+	 * gives up
+	 */
+	private int solvable(Board start, int size) {
+		HashSet<Board> seen = new HashSet<>();
+		ArrayDeque<Board> open = new ArrayDeque<>();
+		seen.add(start);
+		open.add(start);
+		while (!open.isEmpty()) {
+			Board board = open.poll();
+			search.reach(board);
+			int count = 0;
+			for (int box = board.nextBox(0); box != Layout.NONE; box = board.nextBox(box + 1))
+				for (Direction dir : DIRECTIONS)
+					if (search.canPush(board, box, dir))
+						pushes[count++] = (box << 2) | dir.ordinal();
+			for (int i = 0; i < count; i++) {
+				int box = pushes[i] >>> 2;
+				int to = layout.next(box, DIRECTIONS[pushes[i] & 3]);
+				Board next = new Board(board);
+				next.setBox(box, false);
+				next.setBox(to, true);
+				if (next.numOnTarget() == next.numBoxes())
+					return SOLVABLE;
+				next.setActor(box);
+				next.setActor(search.reach(next));
+				if (isOpen(size))
+					return UNKNOWN;
+				if (!seen.add(next))
+					continue;
+				if (seen.size() > corralLimit)
+					return UNKNOWN;
+				open.add(next);
+			}
+		}
+		return UNSOLVABLE;
+	}
+
+	private boolean isOpen(int size) {
+		for (int i = 0; i < size; i++)
+			if (search.isReachable(corral[i]))
+				return true;
+		return false;
+	}
+
+	private static int slot(long key) {
+		return (int) ((key * 0x9e3779b97f4a7c15L) >>> (64 - CACHE_BITS));
+	}
+
+	private void newGeneration() {
+		if (++generation == 0) {
+			Arrays.fill(marks, 0);
+			generation = 1;
+		}
+	}
+
+	private void checkLayout(Board board) {
+		if (board == null)
+			throw new IllegalArgumentException("board cannot be null");
+		if (board.getLayout() != layout)
+			throw new IllegalArgumentException("board is from another puzzle");
+	}
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final int WINDOW = 2; // cells each side of the box
+	private static final int CELL_STATES = 7;
+	private static final int WALL_STATE = 3;
+	private static final int BOX_STATE = 4;
+	private static final int CACHE_BITS = 14;
+	private static final int CACHE_SIZE = 1 << CACHE_BITS;
+	private static final int DEFAULT_CORRAL_LIMIT = 100;
+	private static final int SOLVABLE = 0;
+	private static final int UNSOLVABLE = 1;
+	private static final int UNKNOWN = 2;
+
+	private final Layout layout;
+	private final int[] marks;
+	private final int[] corral;
+	private final int[] owner; // the corral each cell was last filled into
+	private final int[] cluster;
+	private final int[] pushes;
+	private final PushGraph ownRegion;
+	private PushGraph region; // holds the actor's region during a corral check
+	private final PushGraph search;
+	private final long[] freezeKeys = new long[CACHE_SIZE];
+	private final long[] corralKeys = new long[CACHE_SIZE];
+	private int generation = 0;
+	private int corralId = 0;
+	private int corralLimit = DEFAULT_CORRAL_LIMIT;
+	private int clusterSize = 0;
+	private int center;
+	private boolean local;
+	private DeadlockDatabase database;
+	private long databaseHits = 0;
+	private long cacheHits = 0;
+	private long cacheMisses = 0;
+}
@@ -63,6 +63,90 @@ public enum Direction {
 		}
 	}
 
+	/**
+	 * The direction as a LURD character: lower case for a move, upper case for
+	 * a push
+	 * 
+	 * @param push whether the move pushes a box
+	 * @return c one of l, u, r, d, L, U, R or D
+	 */
+	public char toLurd(boolean push) {
+		char c;
+		switch (this) {
+		case NORTH:
+			c = 'u';
+			break;
+		case SOUTH:
+			c = 'd';
+			break;
+		case EAST:
+			c = 'r';
+			break;
+		default: // WEST
+			c = 'l';
+		}
+		return push ? Character.toUpperCase(c) : c;
+	}
+
+	/**
+	 * The direction for a LURD character, of either case
+	 * 
+	 * @param c the LURD character
+	 * @return dir the direction, or null if c is not a LURD character
+	 */
+	public static Direction fromLurd(char c) {
+		switch (c) {
+		case 'u':
+		case 'U':
+			return NORTH;
+		case 'd':
+		case 'D':
+			return SOUTH;
+		case 'r':
+		case 'R':
+			return EAST;
+		case 'l':
+		case 'L':
+			return WEST;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * The direction's bit in a legal move mask (see {@link Sokoban#legalMoves()})
+	 * 
+	 * @return bit 1 shifted left by the ordinal
+	 */
+	public int bit() {
+		return 1 << ordinal();
+	}
+
+	/**
+	 * The direction with the given code (its ordinal)
+	 * 
+	 * @param code the ordinal, from 0 to 3
+	 * @return dir the direction
+	 */
+	public static Direction of(int code) {
+		if ((code < 0) || (code >= VALUES.length))
+			throw new IllegalArgumentException("invalid direction code " + code);
+		return VALUES[code];
+	}
+
+	/**
+	 * The code of the nth (from 0) direction in a legal move mask
+	 * 
+	 * @param mask the legal move mask
+	 * @param n which of its set bits, from 0 to one less than its bit count
+	 * @return code the position of that bit
+	 */
+	public static int nthBit(int mask, int n) {
+		for (int i = 0; i < n; i++)
+			mask &= mask - 1;
+		return Integer.numberOfTrailingZeros(mask);
+	}
+
 	public static Direction fromString(String dirString) {
 		switch (dirString) {
 		case "NORTH":
@@ -77,4 +161,6 @@ public enum Direction {
 			return null;
 		}
 	}
+
+	private static final Direction[] VALUES = values();
 }
@@ -0,0 +1,16 @@
+package sokoban;
+
+/**
+ * A Player that works on primitive direction codes (see
+ * {@link Direction#of(int)}) rather than a Vector of Directions, so that
+ * choosing a move allocates nothing. Use {@link PlayerAdapter} to pass one
+ * where a {@link Player} is expected, or the other way round.
+ */
+public interface FastPlayer {
+
+	/**
+	 * @param choices the legal move mask (see {@link Sokoban#legalMoves()}), never 0
+	 * @return code the code of the chosen direction, one of choices
+	 */
+	public int move(int choices);
+}
@@ -0,0 +1,218 @@
+package sokoban;
+
+import java.util.SplittableRandom;
+
+/**
+ * The static layer of a Sokoban puzzle: walls and targets packed into bitsets
+ * indexed by cell id (row * numCols + col), plus a neighbour table. Walls and
+ * targets never move, so one Layout is shared by every Board derived from the
+ * same puzzle. Also holds the Zobrist keys used to hash positions, and the
+ * map of live squares: those from which a lone box could still be pushed onto
+ * some target.
+ */
+final class Layout {
+
+	Layout(Sokoban puzzle) {
+		this(rows(puzzle), puzzle.getNumCols(), bits(puzzle, true), bits(puzzle, false));
+	}
+
+	/**
+	 * A layout of the given size, from its wall and target bitsets, as read
+	 * back by {@link StateFile}
+	 */
+	Layout(int numRows, int numCols, long[] walls, long[] targets) {
+		if ((numRows < 1) || (numCols < 1))
+			throw new IllegalArgumentException("invalid size " + numRows + "x" + numCols);
+		this.numRows = numRows;
+		this.numCols = numCols;
+		numCells = numRows * numCols;
+		if ((walls.length != words(numCells)) || (targets.length != words(numCells)))
+			throw new IllegalArgumentException("bitsets do not match the size");
+		if (((numCells & 63) != 0) && (((walls[walls.length - 1] | targets[targets.length - 1]) >>> numCells) != 0))
+			throw new IllegalArgumentException("bitsets have cells beyond the size");
+		this.walls = walls;
+		this.targets = targets;
+		for (long word : targets)
+			numTargets += Long.bitCount(word);
+		neighbours = new int[numCells * 4];
+		for (int index = 0; index < numCells; index++) {
+			int row = index / numCols;
+			int col = index % numCols;
+			neighbours[index * 4 + Direction.NORTH.ordinal()] = (row > 0) ? index - numCols : NONE;
+			neighbours[index * 4 + Direction.SOUTH.ordinal()] = (row < numRows - 1) ? index + numCols : NONE;
+			neighbours[index * 4 + Direction.EAST.ordinal()] = (col < numCols - 1) ? index + 1 : NONE;
+			neighbours[index * 4 + Direction.WEST.ordinal()] = (col > 0) ? index - 1 : NONE;
+		}
+		// fixed seed, so that hashes are stable from run to run
+		SplittableRandom rnd = new SplittableRandom(ZOBRIST_SEED);
+		boxKeys = new long[numCells];
+		actorKeys = new long[numCells];
+		for (int index = 0; index < numCells; index++) {
+			boxKeys[index] = rnd.nextLong();
+			actorKeys[index] = rnd.nextLong();
+		}
+		live = new long[words(numCells)];
+		findLiveSquares();
+		long h = numRows * 0x9e3779b97f4a7c15L + numCols;
+		for (int word = 0; word < walls.length; word++)
+			h = (h ^ walls[word]) * 0xbf58476d1ce4e5b9L + targets[word];
+		fingerprint = h ^ (h >>> 31);
+	}
+
+	private static int rows(Sokoban puzzle) {
+		if (puzzle == null)
+			throw new IllegalArgumentException("puzzle cannot be null");
+		return puzzle.getNumRows();
+	}
+
+	private static long[] bits(Sokoban puzzle, boolean wall) {
+		int numCols = puzzle.getNumCols();
+		long[] bits = new long[words(puzzle.getNumRows() * numCols)];
+		for (int row = 0; row < puzzle.getNumRows(); row++) {
+			for (int col = 0; col < numCols; col++) {
+				Cell cell = puzzle.getCell(row, col);
+				if (wall ? cell.hasWall() : cell.isTarget())
+					set(bits, row * numCols + col);
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * Pull a lone box backwards from every target: a square is live if a box
+	 * there can be pulled to from a live square, i.e. pushed back towards a
+	 * target. Every other square is dead, whatever the other boxes do.
+	 */
+	private void findLiveSquares() {
+		int[] queue = new int[numCells];
+		int head = 0;
+		int tail = 0;
+		for (int index = 0; index < numCells; index++) {
+			if (isTarget(index) && !isWall(index)) {
+				set(live, index);
+				queue[tail++] = index;
+			}
+		}
+		while (head < tail) {
+			int to = queue[head++];
+			for (Direction dir : Direction.values()) {
+				// a box at from, pushed in dir by an actor at behind, lands on to
+				int from = next(to, dir.reverse());
+				if ((from == NONE) || isWall(from) || get(live, from))
+					continue;
+				int behind = next(from, dir.reverse());
+				if ((behind == NONE) || isWall(behind))
+					continue;
+				set(live, from);
+				queue[tail++] = from;
+			}
+		}
+	}
+
+	int getNumRows() {
+		return numRows;
+	}
+
+	int getNumCols() {
+		return numCols;
+	}
+
+	int getNumCells() {
+		return numCells;
+	}
+
+	int getNumTargets() {
+		return numTargets;
+	}
+
+	int getNumWords() {
+		return walls.length;
+	}
+
+	int next(int index, Direction dir) {
+		return neighbours[index * 4 + dir.ordinal()];
+	}
+
+	int next(int index, int dir) {
+		return neighbours[index * 4 + dir];
+	}
+
+	boolean isWall(int index) {
+		return get(walls, index);
+	}
+
+	boolean isTarget(int index) {
+		return get(targets, index);
+	}
+
+	/**
+	 * Is index a square a box may occupy without the puzzle becoming
+	 * unsolvable, considering walls only
+	 */
+	boolean isLive(int index) {
+		return get(live, index);
+	}
+
+	/**
+	 * Working space for this layout, private to the calling thread
+	 */
+	Scratch scratch() {
+		return scratch.get();
+	}
+
+	long boxKey(int index) {
+		return boxKeys[index];
+	}
+
+	long actorKey(int index) {
+		return actorKeys[index];
+	}
+
+	/**
+	 * A hash of the size, walls and targets, the same for every copy of a level
+	 */
+	long getFingerprint() {
+		return fingerprint;
+	}
+
+	long[] getTargets() {
+		return targets;
+	}
+
+	long[] getWalls() {
+		return walls;
+	}
+
+	static int words(int numCells) {
+		return (numCells + 63) >>> 6;
+	}
+
+	static boolean get(long[] bits, int index) {
+		return (bits[index >>> 6] & (1L << index)) != 0;
+	}
+
+	static void set(long[] bits, int index) {
+		bits[index >>> 6] |= (1L << index);
+	}
+
+	static void clear(long[] bits, int index) {
+		bits[index >>> 6] &= ~(1L << index);
+	}
+
+	static final int NONE = -1;
+
+	private static final long ZOBRIST_SEED = 0x536f6b6f62616eL;
+
+	private final int numRows;
+	private final int numCols;
+	private final int numCells;
+	private int numTargets = 0;
+	private final long[] walls;
+	private final long[] targets;
+	private final long[] live;
+	private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(getNumCells()));
+	private final int[] neighbours;
+	private final long[] boxKeys;
+	private final long[] actorKeys;
+	private final long fingerprint;
+}
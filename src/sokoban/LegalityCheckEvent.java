@@ -0,0 +1,51 @@
+package sokoban;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for a legality check that took a long time, which
+ * points at the level and square that make the stuck search expensive. Only
+ * raised when {@link Metrics} is enabled; the threshold can be changed in the
+ * recording's settings.
+ */
+@Name("sokoban.LegalityCheck")
+@Label("Legality Check")
+@Category("Sokoban")
+@Description("A canMove check slower than the threshold")
+@Threshold("1 ms")
+public class LegalityCheckEvent extends Event {
+
+	/**
+	 * End the check of a move in direction dir by the actor at actor, and
+	 * commit it if it was slow enough to be recorded
+	 */
+	void end(Layout layout, int actor, Direction dir, boolean legal) {
+		end();
+		if (shouldCommit()) {
+			this.level = layout.getFingerprint();
+			this.actor = actor;
+			this.direction = dir.toString();
+			this.legal = legal;
+			commit();
+		}
+	}
+
+	@Label("Level")
+	@Description("Fingerprint of the level's layout")
+	private long level;
+
+	@Label("Actor")
+	@Description("Cell index of the actor")
+	private int actor;
+
+	@Label("Direction")
+	private String direction;
+
+	@Label("Legal")
+	private boolean legal;
+}
@@ -0,0 +1,217 @@
+package sokoban;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A collection of levels in the standard XSB/SOK text format: each level is a
+ * block of screen lines, separated from the next by blank lines, titles and
+ * comments. The file is memory-mapped and indexed in a single pass; a level's
+ * screen is only decoded, and its Sokoban only built, when it is asked for.
+ * Safe to read from several threads at once.
+ */
+public class LevelPack {
+
+	public LevelPack(File file) {
+		if (file == null)
+			throw new IllegalArgumentException("file cannot be null");
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE)
+				throw new SokobanException("level pack too large: " + file);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+		} catch (IOException e) {
+			throw new SokobanException("" + e);
+		}
+		index();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The level's title: a "Title:" line after the level, else the last comment
+	 * or text line before it, else its number
+	 *
+	 * @return title the title of the level
+	 */
+	public String getTitle(int level) {
+		checkLevel(level);
+		if (titleStarts[level] < 0)
+			return "Level " + (level + 1);
+		String title = decode(titleStarts[level], titleEnds[level]).trim();
+		if (title.regionMatches(true, 0, TITLE, 0, TITLE.length()))
+			title = title.substring(TITLE.length()).trim();
+		while (title.startsWith(";"))
+			title = title.substring(1).trim();
+		return title;
+	}
+
+	/**
+	 * The level's screen, with the alternative floor characters '-' and '_'
+	 * turned into spaces and tabs expanded to the next multiple of eight columns
+	 *
+	 * @return screen the screen, one line per row
+	 */
+	public String getScreen(int level) {
+		checkLevel(level);
+		int start = starts[level];
+		int end = ends[level];
+		StringBuilder b = new StringBuilder(end - start);
+		int lineStart = 0;
+		for (int i = start; i < end; i++) {
+			char c = (char) (buffer.get(i) & 0xff);
+			if ((c == '-') || (c == '_'))
+				b.append(Sokoban.EMPTY);
+			else if (c == '\t') {
+				do
+					b.append(Sokoban.EMPTY);
+				while ((b.length() - lineStart) % TAB_STOP != 0);
+			} else if (c != '\r') {
+				b.append(c);
+				if (c == '\n')
+					lineStart = b.length();
+			}
+		}
+		return b.toString();
+	}
+
+	public Sokoban getLevel(int level) {
+		return new Sokoban(getScreen(level));
+	}
+
+	private void checkLevel(int level) {
+		if ((level < 0) || (level >= size))
+			throw new IllegalArgumentException("no level " + level + " in a pack of " + size);
+	}
+
+	/**
+	 * Find the start and end of every level, and of its title, in one pass
+	 */
+	private void index() {
+		int limit = buffer.limit();
+		int textStart = -1; // last text line since the previous level
+		int textEnd = -1;
+		boolean inLevel = false;
+		int lineStart = 0;
+		while (lineStart < limit) {
+			int lineEnd = lineStart;
+			while ((lineEnd < limit) && (buffer.get(lineEnd) != '\n'))
+				lineEnd++;
+			int kind = classify(lineStart, lineEnd);
+			if (kind == SCREEN) {
+				if (!inLevel) {
+					add(lineStart, textStart, textEnd);
+					textStart = -1;
+					inLevel = true;
+				}
+				ends[size - 1] = Math.min(lineEnd + 1, limit);
+			} else {
+				inLevel = false;
+				if (kind == TEXT) {
+					if (isKey(lineStart, lineEnd, TITLE)) {
+						// a title line names the level before it
+						if (size > 0) {
+							titleStarts[size - 1] = lineStart;
+							titleEnds[size - 1] = lineEnd;
+						}
+						textStart = -1;
+					} else if (!isKey(lineStart, lineEnd, null)) { // skip Author: and the like
+						textStart = lineStart;
+						textEnd = lineEnd;
+					}
+				}
+			}
+			lineStart = lineEnd + 1;
+		}
+	}
+
+	private void add(int start, int titleStart, int titleEnd) {
+		if (size == starts.length) {
+			int capacity = size * 2;
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			titleStarts = Arrays.copyOf(titleStarts, capacity);
+			titleEnds = Arrays.copyOf(titleEnds, capacity);
+		}
+		starts[size] = start;
+		ends[size] = start;
+		titleStarts[size] = titleStart;
+		titleEnds[size] = titleEnd;
+		size++;
+	}
+
+	private int classify(int start, int end) {
+		boolean blank = true;
+		boolean wall = false;
+		for (int i = start; i < end; i++) {
+			byte c = buffer.get(i);
+			if ((c == ' ') || (c == '\t') || (c == '\r'))
+				continue;
+			blank = false;
+			if (c == Sokoban.WALL)
+				wall = true;
+			else if ((c != Sokoban.BOX) && (c != Sokoban.ACTOR) && (c != Sokoban.TARGET) && (c != Sokoban.TARGET_BOX)
+					&& (c != Sokoban.TARGET_ACTOR) && (c != '-') && (c != '_'))
+				return TEXT;
+		}
+		if (blank)
+			return BLANK;
+		return wall ? SCREEN : TEXT;
+	}
+
+	/**
+	 * Does the line start with "key:", or with any word and a colon if key is
+	 * null
+	 */
+	private boolean isKey(int start, int end, String key) {
+		while ((start < end) && (buffer.get(start) == ' '))
+			start++;
+		if (key != null) {
+			if (end - start < key.length())
+				return false;
+			for (int i = 0; i < key.length(); i++)
+				if (Character.toLowerCase((char) buffer.get(start + i)) != key.charAt(i))
+					return false;
+			return true;
+		}
+		int i = start;
+		while ((i < end) && Character.isLetter((char) buffer.get(i)))
+			i++;
+		return (i > start) && (i < end) && (buffer.get(i) == ':');
+	}
+
+	/**
+	 * A line of the file as UTF-8 text, without any carriage return
+	 */
+	private String decode(int start, int end) {
+		byte[] bytes = new byte[end - start];
+		int length = 0;
+		for (int i = start; i < end; i++) {
+			byte c = buffer.get(i);
+			if (c != '\r')
+				bytes[length++] = c;
+		}
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	private static final String TITLE = "title:";
+	private static final int BLANK = 0;
+	private static final int SCREEN = 1;
+	private static final int TEXT = 2;
+	private static final int TAB_STOP = 8;
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final MappedByteBuffer buffer;
+	private int size = 0;
+	private int[] starts = new int[INITIAL_CAPACITY];
+	private int[] ends = new int[INITIAL_CAPACITY];
+	private int[] titleStarts = new int[INITIAL_CAPACITY];
+	private int[] titleEnds = new int[INITIAL_CAPACITY];
+}
@@ -0,0 +1,263 @@
+package sokoban;
+
+import java.util.Arrays;
+
+/**
+ * A lower bound on the pushes still needed: the cheapest way to give each box
+ * its own target, where a box costs the pushes it would need to reach that
+ * target alone. Push distances are found once, by pulling a box back from
+ * every target. The assignment is kept by the Hungarian method, so after a
+ * single push only that box is reassigned, in O(n^2) for n boxes rather than
+ * O(n^3) from scratch. Never more than the moves still needed either, so safe
+ * for A* over moves or pushes.
+ */
+public class LowerBound {
+
+	public LowerBound(Sokoban puzzle) {
+		this(puzzle.getLayout());
+	}
+
+	LowerBound(Layout layout) {
+		this(layout, targetsOf(layout), false);
+	}
+
+	/**
+	 * A bound for boxes that must reach the cells goals, ascending; by pulls
+	 * rather than pushes if pulling, as when searching back from the goal
+	 */
+	LowerBound(Layout layout, int[] goals, boolean pulling) {
+		if (layout == null)
+			throw new IllegalArgumentException("layout cannot be null");
+		this.layout = layout;
+		int numCells = layout.getNumCells();
+		int numTargets = goals.length;
+		targets = goals.clone();
+		distances = new char[numTargets * numCells];
+		for (int target = 0; target < numTargets; target++)
+			distancesTo(target, pulling);
+		boxes = new int[numTargets];
+		rowOf = new int[numCells];
+		Arrays.fill(rowOf, NONE);
+		u = new long[numTargets + 1];
+		v = new long[numTargets + 1];
+		matched = new int[numTargets + 1];
+		way = new int[numTargets + 1];
+		minSlack = new long[numTargets + 1];
+		used = new boolean[numTargets + 1];
+	}
+
+	/**
+	 * The fewest pushes that take a lone box from index to the target at
+	 * target, or INFINITY if it cannot get there
+	 */
+	public int distance(int index, int target) {
+		int d = distances[targetNumber(target) * layout.getNumCells() + index];
+		return (d == UNREACHABLE) ? INFINITY : d;
+	}
+
+	/**
+	 * Assign every box of board from scratch
+	 *
+	 * @return bound the bound, or INFINITY if some box can reach no free target
+	 */
+	public int compute(Board board) {
+		if (board == null)
+			throw new IllegalArgumentException("board cannot be null");
+		if (board.getLayout() != layout)
+			throw new IllegalArgumentException("board is from another puzzle");
+		for (int row = 0; row < numBoxes; row++)
+			rowOf[boxes[row]] = NONE;
+		numBoxes = 0;
+		Arrays.fill(u, 0);
+		Arrays.fill(v, 0);
+		Arrays.fill(matched, 0);
+		if (board.numBoxes() > targets.length)
+			return bound = INFINITY;
+		for (int box = board.nextBox(0); box != Layout.NONE; box = board.nextBox(box + 1)) {
+			rowOf[box] = numBoxes;
+			boxes[numBoxes++] = box;
+			assign(numBoxes); // rows are numbered from 1 inside the method
+		}
+		// spare targets go to rows with no box, at no cost, so that every
+		// target stays matched and update may reassign a row on its own
+		for (int row = numBoxes; row < targets.length; row++) {
+			boxes[row] = NONE;
+			assign(row + 1);
+		}
+		return bound = total();
+	}
+
+	/**
+	 * Reassign the box just pushed from from to to
+	 *
+	 * @return bound the new bound
+	 */
+	public int update(int from, int to) {
+		int row = (from < 0) || (from >= rowOf.length) ? NONE : rowOf[from];
+		if (row == NONE)
+			throw new IllegalArgumentException("no box at " + from);
+		if ((to < 0) || (to >= rowOf.length) || (rowOf[to] != NONE))
+			throw new IllegalArgumentException("cannot move a box to " + to);
+		rowOf[from] = NONE;
+		rowOf[to] = row;
+		boxes[row] = to;
+		int i = row + 1;
+		for (int j = 1; j <= targets.length; j++)
+			if (matched[j] == i)
+				matched[j] = 0;
+		// lower the row's potential until it is feasible against every target
+		long min = Long.MAX_VALUE;
+		for (int j = 1; j <= targets.length; j++)
+			min = Math.min(min, cost(i, j) - v[j]);
+		u[i] = min;
+		assign(i);
+		return bound = total();
+	}
+
+	/**
+	 * The bound if the box at from were pushed to to, leaving this one as it is
+	 */
+	public int peek(int from, int to) {
+		int after = update(from, to);
+		update(to, from);
+		return after;
+	}
+
+	public int get() {
+		return bound;
+	}
+
+	/**
+	 * Add row i to the assignment along a shortest augmenting path, keeping
+	 * u[i] + v[j] <= cost(i, j) throughout
+	 */
+	private void assign(int i) {
+		int m = targets.length;
+		matched[0] = i;
+		int j0 = 0;
+		Arrays.fill(minSlack, Long.MAX_VALUE);
+		Arrays.fill(used, false);
+		do {
+			used[j0] = true;
+			int i0 = matched[j0];
+			long delta = Long.MAX_VALUE;
+			int j1 = 0;
+			for (int j = 1; j <= m; j++) {
+				if (used[j])
+					continue;
+				long slack = cost(i0, j) - u[i0] - v[j];
+				if (slack < minSlack[j]) {
+					minSlack[j] = slack;
+					way[j] = j0;
+				}
+				if (minSlack[j] < delta) {
+					delta = minSlack[j];
+					j1 = j;
+				}
+			}
+			for (int j = 0; j <= m; j++) {
+				if (used[j]) {
+					u[matched[j]] += delta;
+					v[j] -= delta;
+				} else {
+					minSlack[j] -= delta;
+				}
+			}
+			j0 = j1;
+		} while (matched[j0] != 0);
+		do {
+			int j1 = way[j0];
+			matched[j0] = matched[j1];
+			j0 = j1;
+		} while (j0 != 0);
+	}
+
+	private int total() {
+		long sum = 0;
+		for (int j = 1; j <= targets.length; j++)
+			if ((matched[j] != 0) && (matched[j] <= numBoxes))
+				sum += cost(matched[j], j);
+		return (sum >= UNREACHABLE_COST) ? INFINITY : (int) sum;
+	}
+
+	/**
+	 * The cost of giving the box in row i (from 1) the target in column j (from
+	 * 1)
+	 */
+	private long cost(int i, int j) {
+		if (boxes[i - 1] == NONE)
+			return 0;
+		int d = distances[(j - 1) * layout.getNumCells() + boxes[i - 1]];
+		return (d == UNREACHABLE) ? UNREACHABLE_COST : d;
+	}
+
+	private int targetNumber(int target) {
+		int t = Arrays.binarySearch(targets, target);
+		if (t < 0)
+			throw new IllegalArgumentException("no target at " + target);
+		return t;
+	}
+
+	private static int[] targetsOf(Layout layout) {
+		int[] targets = new int[layout.getNumTargets()];
+		int t = 0;
+		for (int index = 0; index < layout.getNumCells(); index++)
+			if (layout.isTarget(index))
+				targets[t++] = index;
+		return targets;
+	}
+
+	/**
+	 * Pull a lone box back from the target, breadth first (see
+	 * {@link Layout#isLive(int)}), or push it away from the target if pulling
+	 */
+	private void distancesTo(int target, boolean pulling) {
+		int numCells = layout.getNumCells();
+		int base = target * numCells;
+		Arrays.fill(distances, base, base + numCells, (char) UNREACHABLE);
+		int[] queue = new int[numCells];
+		int head = 0;
+		int tail = 0;
+		distances[base + targets[target]] = 0;
+		queue[tail++] = targets[target];
+		while (head < tail) {
+			int to = queue[head++];
+			int d = distances[base + to] + 1;
+			for (Direction dir : Direction.values()) {
+				// a box at from, pushed in dir by an actor at behind, lands on to;
+				// or, pulling, it is pulled there by an actor stepping back to behind
+				int from = layout.next(to, dir.reverse());
+				if ((from == Layout.NONE) || layout.isWall(from) || (distances[base + from] != UNREACHABLE))
+					continue;
+				int behind = layout.next(pulling ? to : from, pulling ? dir : dir.reverse());
+				if ((behind == Layout.NONE) || layout.isWall(behind))
+					continue;
+				distances[base + from] = (char) Math.min(d, UNREACHABLE - 1);
+				queue[tail++] = from;
+			}
+		}
+	}
+
+	public static final int INFINITY = Integer.MAX_VALUE;
+
+	private static final int NONE = -1;
+	private static final int UNREACHABLE = Character.MAX_VALUE;
+	private static final long UNREACHABLE_COST = 1L << 40;
+
+	private final Layout layout;
+	private final int[] targets; // cell of each target, ascending
+	private final char[] distances; // [target * numCells + cell]
+	private final int[] boxes; // cell of the box in each row, NONE past numBoxes
+	private final int[] rowOf; // row of the box in each cell, or NONE
+	private int numBoxes = 0;
+	private int bound = 0;
+
+	// Hungarian method, rows and columns from 1: row potentials u, column
+	// potentials v, row matched to each column, and per-search working arrays
+	private final long[] u;
+	private final long[] v;
+	private final int[] matched;
+	private final int[] way;
+	private final long[] minSlack;
+	private final boolean[] used;
+}
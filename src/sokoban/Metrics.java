@@ -0,0 +1,145 @@
+package sokoban;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for the move engine: legality checks, moves and resets, and how
+ * deep the moveable box search goes. Off unless the JVM is started with
+ * -Dsokoban.metrics=true; the switch is a constant, so when it is off the JIT
+ * drops every count along with the test. When on, a legality check that runs
+ * long is also recorded as a {@link LegalityCheckEvent} for Flight Recorder.
+ * Counts are shared by all threads.
+ */
+public final class Metrics {
+
+	private Metrics() {
+	}
+
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Zero every count and restart the clock for movesPerSecond()
+	 */
+	public static void reset() {
+		canMove.reset();
+		moves.reset();
+		pushes.reset();
+		resets.reset();
+		stuckSafe.reset();
+		moveable.reset();
+		frames.reset();
+		maxDepth.reset();
+		since = System.nanoTime();
+	}
+
+	public static long getCanMove() {
+		return canMove.sum();
+	}
+
+	public static long getMoves() {
+		return moves.sum();
+	}
+
+	public static long getPushes() {
+		return pushes.sum();
+	}
+
+	/**
+	 * The number of times a puzzle was put back to its start
+	 */
+	public static long getResets() {
+		return resets.sum();
+	}
+
+	public static long getStuckSafe() {
+		return stuckSafe.sum();
+	}
+
+	public static long getMoveableBoxLocation() {
+		return moveable.sum();
+	}
+
+	/**
+	 * The number of boxes the moveable box searches have looked at, counting
+	 * each search's own
+	 */
+	public static long getMoveableBoxFrames() {
+		return frames.sum();
+	}
+
+	/**
+	 * The deepest any one moveable box search has gone, in boxes
+	 */
+	public static long getMaxDepth() {
+		return maxDepth.get();
+	}
+
+	public static double movesPerSecond() {
+		long nanos = System.nanoTime() - since;
+		return (nanos <= 0) ? 0 : moves.sum() * 1e9 / nanos;
+	}
+
+	public static String summary() {
+		return String.format(
+				"canMove %d, moves %d (%d pushes, %.0f/s), resets %d, isStuckSafe %d, isMoveableBoxLocation %d (%d boxes, depth %d)",
+				getCanMove(), getMoves(), getPushes(), movesPerSecond(), getResets(), getStuckSafe(),
+				getMoveableBoxLocation(), getMoveableBoxFrames(), getMaxDepth());
+	}
+
+	// the counting hooks, called only behind a test of ENABLED
+
+	static void canMove() {
+		canMove.increment();
+	}
+
+	static void move(boolean pushed) {
+		moves.increment();
+		if (pushed)
+			pushes.increment();
+	}
+
+	/**
+	 * A puzzle was put back to its start (see {@link Sokoban#clear()})
+	 */
+	static void restart() {
+		resets.increment();
+	}
+
+	static void stuckSafe() {
+		stuckSafe.increment();
+	}
+
+	/**
+	 * A moveable box search that looked at boxes boxes, at most depth deep
+	 */
+	static void moveableBoxLocation(int boxes, int depth) {
+		moveable.increment();
+		frames.add(boxes);
+		maxDepth.accumulate(depth);
+	}
+
+	/**
+	 * Begin timing a legality check for Flight Recorder; finish it with
+	 * {@link LegalityCheckEvent#end(Layout, int, Direction, boolean)}
+	 */
+	static LegalityCheckEvent beginCheck() {
+		LegalityCheckEvent event = new LegalityCheckEvent();
+		event.begin();
+		return event;
+	}
+
+	public static final boolean ENABLED = Boolean.getBoolean("sokoban.metrics");
+
+	private static final LongAdder canMove = new LongAdder();
+	private static final LongAdder moves = new LongAdder();
+	private static final LongAdder pushes = new LongAdder();
+	private static final LongAdder resets = new LongAdder();
+	private static final LongAdder stuckSafe = new LongAdder();
+	private static final LongAdder moveable = new LongAdder();
+	private static final LongAdder frames = new LongAdder();
+	private static final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+	private static volatile long since = System.nanoTime();
+}
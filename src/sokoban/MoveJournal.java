@@ -0,0 +1,105 @@
+package sokoban;
+
+import java.util.Arrays;
+
+/**
+ * The moves made in a Sokoban puzzle, one byte per move: the direction's
+ * ordinal, plus PUSH if a box was pushed. Moves that have been undone stay
+ * after the cursor until they are redone, or overwritten by a new move.
+ */
+class MoveJournal {
+
+	MoveJournal() {
+		this(INITIAL_CAPACITY);
+	}
+
+	MoveJournal(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be positive");
+		entries = new byte[capacity];
+	}
+
+	void record(Direction dir, boolean pushed) {
+		if (position == entries.length)
+			entries = Arrays.copyOf(entries, entries.length * 2);
+		entries[position++] = encode(dir, pushed);
+		size = position;
+	}
+
+	boolean canUndo() {
+		return position > 0;
+	}
+
+	boolean canRedo() {
+		return position < size;
+	}
+
+	/**
+	 * Step the cursor back over the last move
+	 *
+	 * @return entry the move to reverse
+	 */
+	byte undo() {
+		if (!canUndo())
+			throw new IllegalStateException("nothing to undo");
+		return entries[--position];
+	}
+
+	/**
+	 * Step the cursor forward over the next undone move
+	 *
+	 * @return entry the move to make again
+	 */
+	byte redo() {
+		if (!canRedo())
+			throw new IllegalStateException("nothing to redo");
+		return entries[position++];
+	}
+
+	void clear() {
+		position = 0;
+		size = 0;
+	}
+
+	/**
+	 * The number of moves made, not counting those undone
+	 */
+	int getPosition() {
+		return position;
+	}
+
+	/**
+	 * The number of moves recorded, including those undone
+	 */
+	int size() {
+		return size;
+	}
+
+	byte get(int index) {
+		if ((index < 0) || (index >= size))
+			throw new IndexOutOfBoundsException("index " + index + " out of range");
+		return entries[index];
+	}
+
+	static byte encode(Direction dir, boolean pushed) {
+		return (byte) (dir.ordinal() | (pushed ? PUSH : 0));
+	}
+
+	static Direction direction(byte entry) {
+		return DIRECTIONS[entry & DIRECTION_MASK];
+	}
+
+	static boolean pushed(byte entry) {
+		return (entry & PUSH) != 0;
+	}
+
+	static final int PUSH = 0x4;
+
+	private static final int DIRECTION_MASK = 0x3;
+	private static final int INITIAL_CAPACITY = 64;
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private byte[] entries;
+	private int position = 0;
+	private int size = 0;
+}
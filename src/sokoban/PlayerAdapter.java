@@ -0,0 +1,48 @@
+package sokoban;
+
+import java.util.Vector;
+
+/**
+ * Lets a {@link FastPlayer} be used as a {@link Player}, or a Player as a
+ * FastPlayer.
+ */
+public class PlayerAdapter implements Player, FastPlayer {
+
+	public PlayerAdapter(FastPlayer fast) {
+		if (fast == null)
+			throw new IllegalArgumentException("fast cannot be null");
+		this.fast = fast;
+	}
+
+	public PlayerAdapter(Player player) {
+		if (player == null)
+			throw new IllegalArgumentException("player cannot be null");
+		this.player = player;
+	}
+
+	@Override
+	public Direction move(Vector<Direction> choices) {
+		if (choices == null)
+			throw new IllegalArgumentException("cannot have null choices");
+		if (player != null)
+			return player.move(choices);
+		int mask = 0;
+		for (Direction dir : choices)
+			mask |= dir.bit();
+		return Direction.of(fast.move(mask));
+	}
+
+	@Override
+	public int move(int choices) {
+		if (fast != null)
+			return fast.move(choices);
+		Vector<Direction> dirs = new Vector<>();
+		for (Direction dir : Direction.values())
+			if ((choices & dir.bit()) != 0)
+				dirs.add(dir);
+		return player.move(dirs).ordinal();
+	}
+
+	private FastPlayer fast = null;
+	private Player player = null;
+}
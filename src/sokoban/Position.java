@@ -0,0 +1,122 @@
+package sokoban;
+
+/**
+ * An immutable Sokoban position: a {@link Board} that is never changed, so any
+ * number of threads may query it and move from it at once. Moving returns a
+ * new Position sharing the Layout; a walk also shares the box bitset, and only
+ * a push copies it. Get one from {@link Sokoban#toPosition()} or
+ * {@link #of(Board)}.
+ */
+public final class Position {
+
+	Position(Board board) {
+		this.board = board;
+	}
+
+	/**
+	 * A snapshot of board, which may go on changing
+	 */
+	public static Position of(Board board) {
+		if (board == null)
+			throw new IllegalArgumentException("board cannot be null");
+		return new Position(new Board(board));
+	}
+
+	public boolean canMove(Direction dir) {
+		return board.canMove(dir);
+	}
+
+	/**
+	 * The legal moves as a bitmask, with dir.bit() set if the actor can move in
+	 * direction dir
+	 *
+	 * @return mask the legal move mask, 0 if there are none
+	 */
+	public int legalMoves() {
+		return board.legalMoves();
+	}
+
+	/**
+	 * The position after moving in direction dir, pushing any box ahead
+	 */
+	public Position move(Direction dir) {
+		if (!board.canMove(dir))
+			throw new IllegalArgumentException("cannot move " + dir);
+		return new Position(board.after(dir));
+	}
+
+	/**
+	 * The position after each legal move, indexed by direction code, with null
+	 * for the moves that are not legal
+	 */
+	public Position[] successors() {
+		Position[] next = new Position[DIRECTIONS.length];
+		for (Direction dir : DIRECTIONS)
+			if (board.canMove(dir))
+				next[dir.ordinal()] = new Position(board.after(dir));
+		return next;
+	}
+
+	public int getActor() {
+		return board.getActor();
+	}
+
+	public boolean hasBox(int index) {
+		return board.hasBox(index);
+	}
+
+	public boolean hasWall(int index) {
+		return board.hasWall(index);
+	}
+
+	public int numBoxes() {
+		return board.numBoxes();
+	}
+
+	public int numOnTarget() {
+		return board.numOnTarget();
+	}
+
+	public boolean onTarget() {
+		return board.onTarget();
+	}
+
+	/**
+	 * The 64-bit Zobrist hash of this position (see {@link Board#getHash()})
+	 */
+	public long getHash() {
+		return board.getHash();
+	}
+
+	/**
+	 * A mutable copy, for the searches that work on Boards
+	 */
+	public Board toBoard() {
+		return new Board(board);
+	}
+
+	public Sokoban toSokoban() {
+		return board.toSokoban();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if ((obj == null) || !(obj instanceof Position))
+			return false;
+		return board.equals(((Position) obj).board);
+	}
+
+	@Override
+	public int hashCode() {
+		return board.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return board.toString();
+	}
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private final Board board; // never changed
+}
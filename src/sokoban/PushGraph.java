@@ -0,0 +1,212 @@
+package sokoban;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The push graph of a puzzle: a node is a box configuration plus the region
+ * the actor can walk to, and an edge is a single box push. Every walk within
+ * a region is the same node, so searching this graph skips the actor's
+ * equivalent walks. A region is named by its top-left (lowest index) cell.
+ * Pushes follow the same rules as {@link Box#canMove(Direction)}. Keeps its
+ * own working arrays, so use one PushGraph per thread.
+ */
+public class PushGraph {
+
+	/**
+	 * A push of the box at box in direction dir, after the actor walks path to
+	 * the cell behind it
+	 */
+	public static class Push {
+
+		Push(int box, Direction dir, List<Direction> path) {
+			this.box = box;
+			this.dir = dir;
+			this.path = Collections.unmodifiableList(path);
+		}
+
+		public int getBox() {
+			return box;
+		}
+
+		public Direction getDirection() {
+			return dir;
+		}
+
+		public List<Direction> getPath() {
+			return path;
+		}
+
+		@Override
+		public String toString() {
+			return "Push(" + box + "," + dir + "," + path + ")";
+		}
+
+		private final int box;
+		private final Direction dir;
+		private final List<Direction> path;
+	}
+
+	public PushGraph(Sokoban puzzle) {
+		this(puzzle.getLayout());
+	}
+
+	PushGraph(Layout layout) {
+		if (layout == null)
+			throw new IllegalArgumentException("layout cannot be null");
+		this.layout = layout;
+		int numCells = layout.getNumCells();
+		stamps = new int[numCells];
+		queue = new int[numCells];
+		entry = new byte[numCells];
+	}
+
+	/**
+	 * Every legal push from board, each with the walk that leads to it
+	 */
+	public List<Push> pushes(Board board) {
+		checkLayout(board);
+		reach(board);
+		ArrayList<Push> pushes = new ArrayList<>();
+		int actor = board.getActor();
+		for (int box = board.nextBox(0); box != Layout.NONE; box = board.nextBox(box + 1)) {
+			for (Direction dir : DIRECTIONS) {
+				if (canPush(board, box, dir))
+					pushes.add(new Push(box, dir, path(actor, layout.next(box, dir.reverse()))));
+			}
+		}
+		return pushes;
+	}
+
+	/**
+	 * A copy of board with the actor moved to the top-left cell it can reach
+	 */
+	public Board normalize(Board board) {
+		checkLayout(board);
+		Board normal = new Board(board);
+		normal.setActor(reach(board));
+		return normal;
+	}
+
+	/**
+	 * The Zobrist hash of the push graph node holding board
+	 */
+	public long key(Board board) {
+		checkLayout(board);
+		return board.getBoxHash() ^ layout.actorKey(reach(board));
+	}
+
+	/**
+	 * Walk to the push's cell and make it, recording the moves
+	 */
+	public void apply(Board board, int box, Direction dir, List<Direction> moves) {
+		checkLayout(board);
+		reach(board);
+		int behind = layout.next(box, dir.reverse());
+		if ((behind == Layout.NONE) || !isReachable(behind) || !canPush(board, box, dir))
+			throw new IllegalArgumentException("cannot push " + box + " " + dir);
+		for (Direction step : path(board.getActor(), behind)) {
+			board.step(step);
+			moves.add(step);
+		}
+		board.step(dir);
+		moves.add(dir);
+	}
+
+	/**
+	 * Flood fill the cells the actor can walk to without pushing
+	 *
+	 * @return normal the lowest reachable cell index
+	 */
+	int reach(Board board) {
+		if (++generation == 0) {
+			java.util.Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+		int start = board.getActor();
+		int head = 0;
+		int tail = 0;
+		int normal = start;
+		stamps[start] = generation;
+		queue[tail++] = start;
+		while (head < tail) {
+			int cell = queue[head++];
+			if (cell < normal)
+				normal = cell;
+			for (int dir = 0; dir < DIRECTIONS.length; dir++) {
+				int next = layout.next(cell, dir);
+				if ((next == Layout.NONE) || (stamps[next] == generation) || layout.isWall(next)
+						|| board.hasBox(next))
+					continue;
+				stamps[next] = generation;
+				entry[next] = (byte) dir;
+				queue[tail++] = next;
+			}
+		}
+		return normal;
+	}
+
+	/**
+	 * Could the actor reach index at the last call of reach
+	 */
+	boolean isReachable(int index) {
+		return stamps[index] == generation;
+	}
+
+	/**
+	 * Could the box be pushed in direction dir, by an actor in the region found
+	 * by the last call of reach
+	 */
+	boolean canPush(Board board, int box, Direction dir) {
+		int behind = layout.next(box, dir.reverse());
+		if ((behind == Layout.NONE) || !isReachable(behind))
+			return false;
+		int actor = board.getActor();
+		board.setActor(behind); // the push is judged from where it is made
+		boolean legal = board.canPush(box, dir);
+		board.setActor(actor);
+		return legal;
+	}
+
+	/**
+	 * Could the box be pulled in direction dir, by an actor in the region found
+	 * by the last call of reach, so that pushing it back is legal
+	 */
+	boolean canPull(Board board, int box, Direction dir) {
+		int from = layout.next(box, dir);
+		if ((from == Layout.NONE) || !isReachable(from))
+			return false;
+		int actor = board.getActor();
+		board.setActor(from);
+		boolean legal = board.canPull(box, dir);
+		board.setActor(actor);
+		return legal;
+	}
+
+	/**
+	 * The walk from start to a cell found by the last call of reach
+	 */
+	private List<Direction> path(int start, int to) {
+		ArrayList<Direction> path = new ArrayList<>();
+		for (int cell = to; cell != start; cell = layout.next(cell, DIRECTIONS[entry[cell]].reverse()))
+			path.add(DIRECTIONS[entry[cell]]);
+		Collections.reverse(path);
+		return path;
+	}
+
+	private void checkLayout(Board board) {
+		if (board == null)
+			throw new IllegalArgumentException("board cannot be null");
+		if (board.getLayout() != layout)
+			throw new IllegalArgumentException("board is from another puzzle");
+	}
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private final Layout layout;
+	private final int[] stamps;
+	private final int[] queue;
+	private final byte[] entry; // direction the flood fill entered each cell
+	private int generation = 0;
+}
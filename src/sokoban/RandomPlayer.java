@@ -1,23 +1,20 @@
 package sokoban;
 
 import java.util.Random;
-import java.util.Vector;
 
-public class RandomPlayer implements Player {
+public class RandomPlayer implements FastPlayer {
 
 	public RandomPlayer() {
 		rnd = new Random();
 	}
 
 	@Override
-	public Direction move(Vector<Direction> choices) {
-		if (choices == null)
-			throw new IllegalArgumentException("cannot have null choices");
-		if (choices.isEmpty())
+	public int move(int choices) {
+		if (choices == 0)
 			throw new IllegalArgumentException("cannot have empty choices");
-		int size = choices.size();
+		int size = Integer.bitCount(choices);
 		int idx = rnd.nextInt(size);
-		return choices.get(idx);
+		return Direction.nthBit(choices, idx);
 	}
 
 	private Random rnd = null;
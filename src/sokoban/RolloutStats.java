@@ -0,0 +1,106 @@
+package sokoban;
+
+/**
+ * Totals over a run of {@link Rollouts} playouts.
+ */
+public class RolloutStats {
+
+	RolloutStats(int numBoxes) {
+		onTarget = new long[numBoxes + 1];
+	}
+
+	void add(RolloutStats other) {
+		playouts += other.playouts;
+		solved += other.solved;
+		stuck += other.stuck;
+		moves += other.moves;
+		for (int i = 0; i < onTarget.length; i++)
+			onTarget[i] += other.onTarget[i];
+	}
+
+	void record(int movesMade, int numOnTarget, boolean solvedIt, boolean stuckIt) {
+		playouts++;
+		moves += movesMade;
+		onTarget[numOnTarget]++;
+		if (solvedIt)
+			solved++;
+		if (stuckIt)
+			stuck++;
+	}
+
+	void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public long getPlayouts() {
+		return playouts;
+	}
+
+	public long getSolved() {
+		return solved;
+	}
+
+	public double getSuccessRate() {
+		return (playouts == 0) ? 0.0 : (double) solved / playouts;
+	}
+
+	/**
+	 * The number of playouts that ended with no legal move, or deadlocked if
+	 * {@link Rollouts#setPruneDeadlocks(boolean)} is on
+	 */
+	public long getStuck() {
+		return stuck;
+	}
+
+	public double getMeanMoves() {
+		return (playouts == 0) ? 0.0 : (double) moves / playouts;
+	}
+
+	/**
+	 * How many playouts ended with each number of boxes on target
+	 *
+	 * @return counts indexed by the number of boxes on target
+	 */
+	public long[] getOnTargetHistogram() {
+		return onTarget.clone();
+	}
+
+	public double getMeanOnTarget() {
+		if (playouts == 0)
+			return 0.0;
+		long sum = 0;
+		for (int i = 0; i < onTarget.length; i++)
+			sum += i * onTarget[i];
+		return (double) sum / playouts;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	public double getPlayoutsPerSecond() {
+		return (elapsedNanos == 0) ? 0.0 : playouts * 1e9 / elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder b = new StringBuilder();
+		b.append(playouts).append(" playouts, ").append(solved).append(" solved (");
+		b.append(String.format("%.4f", getSuccessRate())).append("), ").append(stuck).append(" stuck, mean ");
+		b.append(String.format("%.1f", getMeanMoves())).append(" moves, on target [");
+		for (int i = 0; i < onTarget.length; i++) {
+			if (i > 0)
+				b.append(",");
+			b.append(onTarget[i]);
+		}
+		b.append("], ").append(String.format("%.0f", getPlayoutsPerSecond())).append("/s");
+		return b.toString();
+	}
+
+	private long playouts = 0;
+	private long solved = 0;
+	private long stuck = 0;
+	private long moves = 0;
+	private final long[] onTarget;
+	private long elapsedNanos = 0;
+}
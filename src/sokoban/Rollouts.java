@@ -0,0 +1,149 @@
+package sokoban;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Monte Carlo playouts from a given position, e.g. to estimate how hard a
+ * level is. Each worker thread plays on its own {@link Board}, reset from the
+ * start position by copying a few words, with its own SplittableRandom split
+ * from the run's seed, so a run is repeatable for a given seed and
+ * parallelism. No events are sent and nothing is allocated per move.
+ */
+public class Rollouts {
+
+	/**
+	 * Chooses a move for a playout
+	 */
+	public interface Policy {
+
+		/**
+		 * @param legalMoves the legal moves (see {@link Board#legalMoves()}), never 0
+		 * @return dir the ordinal of the chosen direction, one of legalMoves; any
+		 *         other stops the run with an IllegalStateException
+		 */
+		public int choose(Board board, int legalMoves, SplittableRandom rnd);
+	}
+
+	/**
+	 * Picks uniformly among the legal moves
+	 */
+	public static final Policy RANDOM = (board, legalMoves, rnd) -> Direction.nthBit(legalMoves,
+			rnd.nextInt(Integer.bitCount(legalMoves)));
+
+	public Rollouts(Sokoban puzzle) {
+		this(puzzle.toBoard());
+	}
+
+	public Rollouts(Board start) {
+		if (start == null)
+			throw new IllegalArgumentException("start cannot be null");
+		this.start = new Board(start);
+	}
+
+	/**
+	 * Set the most moves in one playout
+	 */
+	public void setDepth(int depth) {
+		if (depth <= 0)
+			throw new IllegalArgumentException("depth must be positive");
+		this.depth = depth;
+	}
+
+	public void setPolicy(Policy policy) {
+		if (policy == null)
+			throw new IllegalArgumentException("policy cannot be null");
+		this.policy = policy;
+	}
+
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be positive");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * End a playout as stuck as soon as a push leaves it deadlocked (see
+	 * {@link Deadlocks}), rather than playing on to the depth limit
+	 */
+	public void setPruneDeadlocks(boolean pruneDeadlocks) {
+		this.pruneDeadlocks = pruneDeadlocks;
+	}
+
+	public RolloutStats run(long playouts, long seed) {
+		if (playouts < 0)
+			throw new IllegalArgumentException("playouts cannot be negative");
+		long began = System.nanoTime();
+		SplittableRandom root = new SplittableRandom(seed);
+		RolloutStats total = new RolloutStats(start.numBoxes());
+		if (parallelism == 1) {
+			total.add(play(playouts, root));
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				List<Future<RolloutStats>> parts = new ArrayList<>(parallelism);
+				for (int worker = 0; worker < parallelism; worker++) {
+					long share = playouts / parallelism + ((worker < playouts % parallelism) ? 1 : 0);
+					SplittableRandom rnd = root.split();
+					parts.add(pool.submit(() -> play(share, rnd)));
+				}
+				for (Future<RolloutStats> part : parts)
+					total.add(part.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SokobanException("rollouts interrupted");
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IllegalStateException)
+					throw (IllegalStateException) e.getCause(); // as when run on one thread
+				throw new SokobanException("" + e.getCause());
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+		total.setElapsedNanos(System.nanoTime() - began);
+		return total;
+	}
+
+	private RolloutStats play(long playouts, SplittableRandom rnd) {
+		RolloutStats stats = new RolloutStats(start.numBoxes());
+		Board board = new Board(start);
+		Deadlocks deadlocks = pruneDeadlocks ? new Deadlocks(start.getLayout()) : null;
+		for (long i = 0; i < playouts; i++) {
+			board.copyFrom(start);
+			int moves = 0;
+			boolean stuck = false;
+			while ((moves < depth) && !board.onTarget()) {
+				int legal = board.legalMoves();
+				if (legal == 0) {
+					stuck = true;
+					break;
+				}
+				int choice = policy.choose(board, legal, rnd);
+				if ((choice < 0) || (choice >= DIRECTIONS.length) || ((legal & (1 << choice)) == 0))
+					throw new IllegalStateException("policy " + policy + " chose illegal move " + choice);
+				Direction dir = DIRECTIONS[choice];
+				moves++;
+				if (board.step(dir) && (deadlocks != null)
+						&& deadlocks.isDeadlockedAfterPush(board, board.getLayout().next(board.getActor(), dir))) {
+					stuck = true;
+					break;
+				}
+			}
+			stats.record(moves, board.numOnTarget(), board.onTarget(), stuck);
+		}
+		return stats;
+	}
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final int DEFAULT_DEPTH = 1000;
+
+	private final Board start;
+	private int depth = DEFAULT_DEPTH;
+	private Policy policy = RANDOM;
+	private int parallelism = 1;
+	private boolean pruneDeadlocks = false;
+}
@@ -0,0 +1,46 @@
+package sokoban;
+
+import java.util.Arrays;
+
+/**
+ * Preallocated working space for searches over the cells of one Layout, so
+ * that hot-path checks never allocate. A cell counts as marked when its stamp
+ * equals the current generation; starting a new generation unmarks every cell
+ * in O(1). Each thread gets its own Scratch per Layout (see
+ * {@link Layout#scratch()}).
+ */
+final class Scratch {
+
+	Scratch(int numCells) {
+		stamps = new int[numCells];
+		cells = new int[numCells + 1];
+		dirs = new byte[numCells + 1];
+		steps = new byte[numCells + 1];
+	}
+
+	/**
+	 * Unmark every cell
+	 */
+	void reset() {
+		if (++generation == 0) {
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+	}
+
+	boolean isMarked(int index) {
+		return stamps[index] == generation;
+	}
+
+	void mark(int index) {
+		stamps[index] = generation;
+	}
+
+	final int[] stamps;
+	int generation = 0;
+
+	// explicit stack for iterative searches: cell, direction, resume point
+	final int[] cells;
+	final byte[] dirs;
+	final byte[] steps;
+}
@@ -0,0 +1,548 @@
+package sokoban;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hosts many games at once, headless, each session on its own thread: a
+ * virtual thread where the JVM has them, otherwise a plain one. Clients
+ * connect over a socket on the loopback address, or in process through a
+ * {@link Connection}. The protocol is a line per command, the same commands
+ * as {@link SokobanUI} (N, S, E, W, P, U, R, Clear and Quit). After each
+ * command the server sends the screen, a line per row, then a status line
+ * beginning OK or ERR; Quit is answered by BYE. Output is bounded: a session
+ * waits while its client is not reading, and is dropped once a reply has
+ * waited longer than the write timeout. A session that gets no command for
+ * the idle timeout is ended too, so an idle client does not hold its thread.
+ * Once the most sessions are open, further clients wait.
+ */
+public class SessionServer implements Closeable {
+
+	/**
+	 * An in-process client of one session, through bounded queues
+	 */
+	public static class Connection implements Closeable {
+
+		Connection(long timeout) {
+			this.timeout = timeout;
+		}
+
+		/**
+		 * Send a command line, waiting if the session is behind
+		 */
+		public void send(String command) {
+			if (command == null)
+				throw new IllegalArgumentException("command cannot be null");
+			put(input, command, timeout);
+		}
+
+		/**
+		 * The next line from the session, waiting for it, or null once the
+		 * session has ended
+		 */
+		public String receive() {
+			if (ended)
+				return null;
+			try {
+				String line = output.take();
+				if (line == END) {
+					ended = true;
+					return null;
+				}
+				return line;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SokobanException("receive interrupted");
+			}
+		}
+
+		/**
+		 * Send a command and collect the reply, up to and including its status
+		 * line
+		 */
+		public List<String> exchange(String command) {
+			send(command);
+			return reply();
+		}
+
+		/**
+		 * The lines of the next reply, up to and including its status line
+		 */
+		public List<String> reply() {
+			ArrayList<String> lines = new ArrayList<>();
+			String line;
+			while ((line = receive()) != null) {
+				lines.add(line);
+				if (isStatus(line))
+					break;
+			}
+			return lines;
+		}
+
+		/**
+		 * End the session, if it has not ended already, waiting up to the write
+		 * timeout for it to take the request; a session that does not is left
+		 * to its idle timeout
+		 */
+		@Override
+		public void close() {
+			if (over)
+				return;
+			try {
+				if (!input.offer(END, timeout, TimeUnit.MILLISECONDS))
+					trace("close: session not reading");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private final BlockingQueue<String> input = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		private final BlockingQueue<String> output = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		private final long timeout;
+		private boolean ended = false;
+		private volatile boolean over = false; // the session has ended
+	}
+
+	/**
+	 * A server whose sessions each play a fresh puzzle from levels
+	 */
+	public SessionServer(Supplier<Sokoban> levels) {
+		if (levels == null)
+			throw new IllegalArgumentException("levels cannot be null");
+		this.levels = levels;
+		sessions = newSessionExecutor();
+		watchdog = new ScheduledThreadPoolExecutor(1, task -> {
+			Thread thread = new Thread(task, "SessionServer-watchdog");
+			thread.setDaemon(true);
+			return thread;
+		});
+		watchdog.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Choose the player behind the P command (the default is random)
+	 */
+	public void setPlayer(Supplier<? extends FastPlayer> players) {
+		if (players == null)
+			throw new IllegalArgumentException("players cannot be null");
+		this.players = players;
+	}
+
+	/**
+	 * Set the most sessions open at once; call before the first client
+	 */
+	public void setMaxSessions(int maxSessions) {
+		if (maxSessions < 1)
+			throw new IllegalArgumentException("maxSessions must be positive");
+		permits = new Semaphore(maxSessions);
+	}
+
+	/**
+	 * Set how long a session waits for its client's next command before it
+	 * ends; call before the first client
+	 */
+	public void setIdleTimeout(long millis) {
+		if (millis <= 0)
+			throw new IllegalArgumentException("idle timeout must be positive");
+		idleTimeout = millis;
+	}
+
+	/**
+	 * Set how long a session waits on a client that is not reading its output
+	 * before it drops the client; call before the first client
+	 */
+	public void setWriteTimeout(long millis) {
+		if (millis <= 0)
+			throw new IllegalArgumentException("write timeout must be positive");
+		writeTimeout = millis;
+	}
+
+	public int getNumSessions() {
+		return numSessions.get();
+	}
+
+	/**
+	 * Start a session in process, waiting if the most are already open
+	 */
+	public Connection connect() {
+		checkOpen();
+		acquire();
+		Connection connection = new Connection(writeTimeout);
+		long idle = idleTimeout;
+		long timeout = writeTimeout;
+		start(() -> serve(() -> connection.input.poll(idle, TimeUnit.MILLISECONDS),
+				line -> put(connection.output, line, timeout), () -> {
+				}, () -> {
+					connection.over = true;
+					put(connection.output, END, timeout);
+				}));
+		return connection;
+	}
+
+	/**
+	 * Accept clients on a port of the loopback address (0 for any free port),
+	 * on a thread of its own
+	 *
+	 * @return port the port listened on
+	 */
+	public synchronized int listen(int port) {
+		checkOpen();
+		if (listener != null)
+			throw new IllegalStateException("already listening");
+		try {
+			listener = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		} catch (IOException e) {
+			throw new SokobanException("" + e);
+		}
+		Thread acceptor = new Thread(this::accept, "SessionServer-" + listener.getLocalPort());
+		acceptor.setDaemon(true);
+		acceptor.start();
+		return listener.getLocalPort();
+	}
+
+	/**
+	 * Stop listening and end every session
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		if (listener != null) {
+			try {
+				listener.close();
+			} catch (IOException e) {
+				trace("close: " + e);
+			}
+		}
+		sessions.shutdownNow();
+		watchdog.shutdownNow();
+		for (Socket socket : sockets) // blocked reads are not interrupted
+			close(socket);
+	}
+
+	private void close(Socket socket) {
+		sockets.remove(socket);
+		try {
+			socket.close();
+		} catch (IOException e) {
+			trace("close: " + e);
+		}
+	}
+
+	private void accept() {
+		while (!closed) {
+			acquire();
+			Socket socket;
+			try {
+				socket = listener.accept();
+			} catch (IOException e) {
+				permits.release();
+				if (!closed)
+					trace("accept: " + e);
+				return;
+			}
+			try {
+				socket.setSoTimeout((int) Math.min(idleTimeout, Integer.MAX_VALUE)); // reads give up when idle
+				BufferedReader in = new BufferedReader(
+						new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+				BufferedWriter out = new BufferedWriter(
+						new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+				sockets.add(socket);
+				WriteGuard guard = new WriteGuard(socket);
+				start(() -> serve(in::readLine, line -> guard.write(() -> {
+					out.write(line);
+					out.write('\n');
+				}), () -> guard.flush(out::flush), () -> close(socket)));
+			} catch (IOException e) {
+				trace("accept: " + e);
+				permits.release();
+				close(socket);
+			} catch (SokobanException e) { // start has given back the permit
+				trace("accept: " + e);
+				close(socket);
+			}
+		}
+	}
+
+	private void start(Runnable session) {
+		numSessions.incrementAndGet();
+		try {
+			sessions.execute(session);
+		} catch (RuntimeException e) {
+			numSessions.decrementAndGet();
+			permits.release();
+			throw new SokobanException("cannot start session: " + e);
+		}
+	}
+
+	/**
+	 * Play one session: read a command, make it, send the screen and a status,
+	 * until Quit or the end of input
+	 */
+	private void serve(LineSource in, LineSink out, Action flush, Action close) {
+		try {
+			Sokoban puzzle = levels.get();
+			FastPlayer player = players.get();
+			show(puzzle, out);
+			out.write("OK ready");
+			flush.run();
+			String command;
+			while (((command = in.read()) != null) && (command != END)) {
+				String status = execute(puzzle, player, command.trim());
+				if (status == null) {
+					out.write("BYE");
+					flush.run();
+					break;
+				}
+				show(puzzle, out);
+				out.write(status);
+				flush.run();
+			}
+		} catch (InterruptedException e) {
+			trace("serve: interrupted");
+		} catch (Exception e) {
+			trace("serve: " + e);
+		} finally {
+			try {
+				close.run();
+			} catch (Exception e) {
+				trace("serve: " + e);
+			}
+			numSessions.decrementAndGet();
+			permits.release();
+		}
+	}
+
+	/**
+	 * Make one command
+	 *
+	 * @return status the status line, or null to end the session
+	 */
+	private static String execute(Sokoban puzzle, FastPlayer player, String command) {
+		if (command.equalsIgnoreCase("Quit"))
+			return null;
+		if (command.isEmpty())
+			return "OK";
+		if (command.equalsIgnoreCase("N"))
+			return move(puzzle, Direction.NORTH);
+		if (command.equalsIgnoreCase("S"))
+			return move(puzzle, Direction.SOUTH);
+		if (command.equalsIgnoreCase("E"))
+			return move(puzzle, Direction.EAST);
+		if (command.equalsIgnoreCase("W"))
+			return move(puzzle, Direction.WEST);
+		if (command.equalsIgnoreCase("P")) {
+			int choices = puzzle.legalMoves();
+			if (choices == 0)
+				return "ERR no moves left";
+			return move(puzzle, Direction.of(player.move(choices)));
+		}
+		if (command.equalsIgnoreCase("U")) {
+			if (!puzzle.canUndo())
+				return "ERR nothing to undo";
+			puzzle.undo();
+			return "OK";
+		}
+		if (command.equalsIgnoreCase("R")) {
+			if (!puzzle.canRedo())
+				return "ERR nothing to redo";
+			puzzle.redo();
+			return "OK";
+		}
+		if (command.equalsIgnoreCase("Clear")) {
+			puzzle.clear();
+			return "OK";
+		}
+		return "ERR unknown command (" + command + ")";
+	}
+
+	private static String move(Sokoban puzzle, Direction dir) {
+		if (!puzzle.canMove(dir))
+			return "ERR invalid move";
+		puzzle.move(dir);
+		return puzzle.onTarget() ? "OK game won!" : "OK";
+	}
+
+	private static void show(Sokoban puzzle, LineSink out) throws Exception {
+		String screen = puzzle.toString();
+		int from = 0;
+		for (int to = screen.indexOf('\n'); to >= 0; to = screen.indexOf('\n', from)) {
+			out.write(screen.substring(from, to));
+			from = to + 1;
+		}
+		if (from < screen.length())
+			out.write(screen.substring(from));
+	}
+
+	static boolean isStatus(String line) {
+		return line.startsWith("OK") || line.startsWith("ERR") || line.equals("BYE");
+	}
+
+	/**
+	 * Put a line on a session's queue, giving up after timeout milliseconds on
+	 * a side that has stopped reading
+	 */
+	private static void put(BlockingQueue<String> queue, String line, long timeout) {
+		try {
+			if (!queue.offer(line, timeout, TimeUnit.MILLISECONDS))
+				throw new SokobanException("stopped reading");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SokobanException("interrupted");
+		}
+	}
+
+	private void acquire() {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SokobanException("interrupted");
+		}
+	}
+
+	private void checkOpen() {
+		if (closed)
+			throw new IllegalStateException("server is closed");
+	}
+
+	/**
+	 * A thread per task: virtual where the JVM has them (Java 21), found by
+	 * reflection as this code targets Java 11, else a daemon platform thread
+	 */
+	static ExecutorService newSessionExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			ExecutorService executor = (ExecutorService) factory.invoke(null);
+			trace("newSessionExecutor: virtual threads");
+			return executor;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			trace("newSessionExecutor: platform threads (" + e + ")");
+		}
+		AtomicInteger count = new AtomicInteger();
+		return Executors.newCachedThreadPool(task -> {
+			Thread thread = new Thread(null, task, "Session-" + count.incrementAndGet(), PLATFORM_STACK_SIZE);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private interface LineSource {
+		String read() throws Exception;
+	}
+
+	private interface LineSink {
+		void write(String line) throws Exception;
+	}
+
+	private interface Action {
+		void run() throws Exception;
+	}
+
+	/**
+	 * Closes a socket whose reply blocks past the write timeout, as socket
+	 * writes have no timeout of their own. One alarm covers a whole reply: it
+	 * is set by the reply's first write, as a full buffer may block there, and
+	 * cancelled once the reply is flushed. Used by its session's thread only.
+	 */
+	private final class WriteGuard {
+
+		WriteGuard(Socket socket) {
+			this.socket = socket;
+		}
+
+		void write(Action write) throws Exception {
+			if (alarm == null)
+				alarm = watchdog.schedule(() -> {
+					trace("guard: client stopped reading");
+					close(socket);
+				}, writeTimeout, TimeUnit.MILLISECONDS);
+			write.run();
+		}
+
+		void flush(Action flush) throws Exception {
+			try {
+				write(flush);
+			} finally {
+				alarm.cancel(false);
+				alarm = null;
+			}
+		}
+
+		private final Socket socket;
+		private ScheduledFuture<?> alarm = null; // set while a reply is being written
+	}
+
+	/**
+	 * Serve the levels of a pack, one after another as clients connect, on a
+	 * loopback port
+	 *
+	 * @param args pack-file [port]
+	 */
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.out.println("usage: SessionServer pack-file [port]");
+			return;
+		}
+		LevelPack pack = new LevelPack(new File(args[0]));
+		AtomicInteger next = new AtomicInteger();
+		SessionServer server = new SessionServer(() -> pack.getLevel(next.getAndIncrement() % pack.size()));
+		int port = server.listen((args.length > 1) ? Integer.parseInt(args[1]) : 0);
+		System.out.println("listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + port);
+		try {
+			Thread.currentThread().join();
+		} catch (InterruptedException e) {
+			server.close();
+		}
+	}
+
+	public static void trace(String s) {
+		if (traceOn)
+			System.out.println("trace: " + s);
+	}
+
+	private static final String END = new String("END"); // compared by identity
+	private static final int QUEUE_CAPACITY = 64; // lines each way, per session
+	private static final int BUFFER_SIZE = 512; // chars each way, per socket
+	private static final long DEFAULT_IDLE_TIMEOUT = 10 * 60 * 1000L;
+	private static final long DEFAULT_WRITE_TIMEOUT = 60 * 1000L;
+	private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+	private static final int DEFAULT_MAX_SESSIONS = 10000;
+
+	private final Supplier<Sokoban> levels;
+	private final ExecutorService sessions;
+	private final ScheduledThreadPoolExecutor watchdog; // ends socket writes that stall
+	private Supplier<? extends FastPlayer> players = RandomPlayer::new;
+	private Semaphore permits = new Semaphore(DEFAULT_MAX_SESSIONS);
+	private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	private long writeTimeout = DEFAULT_WRITE_TIMEOUT;
+	private final AtomicInteger numSessions = new AtomicInteger();
+	private ServerSocket listener = null;
+	private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+	private volatile boolean closed = false;
+
+	private static boolean traceOn = false; // for debugging
+}
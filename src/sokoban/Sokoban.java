@@ -3,12 +3,11 @@ package sokoban;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Observable;
+import java.util.Arrays;
 import java.util.Scanner;
 import java.util.Vector;
 
-@SuppressWarnings("deprecation")
-public class Sokoban extends Observable {
+public class Sokoban {
 
 	public Sokoban(File file) {
 		this(fileAsString(file));
@@ -17,7 +16,6 @@ public class Sokoban extends Observable {
 	public Sokoban(String screen) {
 		if (screen == null)
 			throw new IllegalArgumentException("screen cannot be null");
-		startScreen = screen;
 		Scanner scnr = null;
 		ArrayList<String> lines = new ArrayList<>();
 		scnr = new Scanner(screen);
@@ -41,42 +39,148 @@ public class Sokoban extends Observable {
 					actorCell = cells[row][col];
 			}
 		}
+		layout = new Layout(this);
+		board = new Board(this);
+		start = new Board(board);
+		dirty = new long[layout.getNumWords()];
 		checkValid();
 	}
 
+	/**
+	 * A puzzle starting from board, sharing its Layout; the cells are built
+	 * from the bitsets, without going through text
+	 */
+	Sokoban(Board board) {
+		if (board == null)
+			throw new IllegalArgumentException("board cannot be null");
+		layout = board.getLayout();
+		numRows = layout.getNumRows();
+		numCols = layout.getNumCols();
+		cells = new Cell[numRows][numCols];
+		for (int row = 0; row < numRows; row++) {
+			for (int col = 0; col < numCols; col++) {
+				int index = row * numCols + col;
+				cells[row][col] = new Cell(display(board, index), this, row, col);
+				if (index == board.getActor())
+					actorCell = cells[row][col];
+			}
+		}
+		this.board = new Board(board);
+		start = new Board(board);
+		dirty = new long[layout.getNumWords()];
+		checkValid();
+	}
+
+	private static char display(Board board, int index) {
+		Layout layout = board.getLayout();
+		boolean target = layout.isTarget(index);
+		if (layout.isWall(index))
+			return WALL;
+		if (board.hasBox(index))
+			return target ? TARGET_BOX : BOX;
+		if (index == board.getActor())
+			return target ? TARGET_ACTOR : ACTOR;
+		return target ? TARGET : EMPTY;
+	}
+
 	private void checkValid() {
 		assert numBoxes() == numTargets() : "number of boxes and targets must be equal";
 		assert numActors() == 1 : "must be exactly one actor";
 		assert actorCell.hasActor() : "actorCell must be valid";
 	}
 
+	/**
+	 * Restore the puzzle to its start position, moving only the Box and Actor
+	 * instances that are out of place
+	 */
 	public void clear() {
-		if (startScreen == null)
-			throw new IllegalStateException("startScreen cannot be null");
-		Scanner scnr = null;
-		ArrayList<String> lines = new ArrayList<>();
-		scnr = new Scanner(startScreen);
-		while (scnr.hasNextLine()) {
-			String line = scnr.nextLine();
-			if (line.length() > 0)
-				lines.add(line);
+		if (start == null)
+			throw new IllegalStateException("start cannot be null");
+		Cell oldActorCell = actorCell;
+		Occupant actor = actorCell.getOccupant();
+		actorCell.setOccupant(null);
+		// pair each misplaced box with a start cell that lacks one
+		int from = board.nextBoxNotIn(start, 0);
+		int to = start.nextBoxNotIn(board, 0);
+		while (from != Layout.NONE) {
+			Cell fromCell = getCell(from);
+			Cell toCell = getCell(to);
+			toCell.setOccupant(fromCell.getOccupant());
+			fromCell.setOccupant(null);
+			changed(fromCell);
+			changed(toCell);
+			from = board.nextBoxNotIn(start, from + 1);
+			to = start.nextBoxNotIn(board, to + 1);
 		}
-		scnr.close();
-		for (int row = 0; row < numRows; row++) {
-			String line = lines.get(row);
-			for (int col = 0; col < numCols; col++) {
-				char display = (col < line.length()) ? line.charAt(col) : Sokoban.EMPTY;
-				if (cells[row][col].getDisplay() != display) {
-					cells[row][col].setDisplay(display);
-					if (display == ACTOR || display == TARGET_ACTOR)
-						actorCell = cells[row][col];
-					trace("clear: changing display in (" + row + "," + col + ")");
-					setChanged();
-					notifyObservers(cells[row][col]);
-				}
-			}
+		actorCell = getCell(start.getActor());
+		actorCell.setOccupant(actor);
+		if (actorCell != oldActorCell) {
+			changed(oldActorCell);
+			changed(actorCell);
 		}
+		board.copyFrom(start);
+		if (Metrics.ENABLED)
+			Metrics.restart();
+		if (lowerBound != null)
+			lowerBound.compute(board);
+		journal.clear();
 		checkValid();
+		fireChanged();
+	}
+
+	public void addListener(SokobanListener listener) {
+		if (listener == null)
+			throw new IllegalArgumentException("listener cannot be null");
+		listeners = Arrays.copyOf(listeners, listeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+	}
+
+	public void removeListener(SokobanListener listener) {
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] == listener) {
+				SokobanListener[] remaining = new SokobanListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, remaining, 0, i);
+				System.arraycopy(listeners, i + 1, remaining, i, remaining.length - i);
+				listeners = remaining;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Hold back events until the matching resumeNotifications, which then
+	 * reports every cell changed in between as a single event. Calls may nest.
+	 */
+	public void suspendNotifications() {
+		suspended++;
+	}
+
+	public void resumeNotifications() {
+		if (suspended == 0)
+			throw new IllegalStateException("notifications are not suspended");
+		if (--suspended == 0)
+			fireChanged();
+	}
+
+	private void changed(Cell cell) {
+		if (listeners.length == 0)
+			return; // nobody to tell
+		int index = cell.getIndex();
+		if (Layout.get(dirty, index))
+			return;
+		Layout.set(dirty, index);
+		dirtyCells.add(cell);
+	}
+
+	private void fireChanged() {
+		if ((suspended > 0) || dirtyCells.isEmpty())
+			return;
+		SokobanEvent event = new SokobanEvent(this, new ArrayList<>(dirtyCells));
+		for (Cell cell : dirtyCells)
+			Layout.clear(dirty, cell.getIndex());
+		dirtyCells.clear();
+		for (SokobanListener listener : listeners)
+			listener.puzzleChanged(event);
 	}
 
 	public int getNumRows() {
@@ -93,26 +197,60 @@ public class Sokoban extends Observable {
 		return cells[row][col];
 	}
 
+	private Cell getCell(int index) {
+		return cells[index / numCols][index % numCols];
+	}
+
 	Cell getActorCell() {
 		return actorCell;
 	}
 
+	Layout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * The 64-bit Zobrist hash of the current position, maintained incrementally
+	 * by move and clear
+	 * 
+	 * @return hash the position hash
+	 */
+	public long getHash() {
+		return board.getHash();
+	}
+
+	/**
+	 * The packed position; moves are decided and made on it, and the cell grid
+	 * follows for the UI
+	 */
+	Board getBoard() {
+		return board;
+	}
+
+	/**
+	 * The moves made since the start, including those undone
+	 */
+	MoveJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * An immutable snapshot of the current position
+	 */
+	public Position toPosition() {
+		return new Position(new Board(board));
+	}
+
+	public Board toBoard() {
+		return new Board(board);
+	}
+
 	public int numTargets() {
-		int num = 0;
-		for (int row = 0; row < numRows; row++)
-			for (int col = 0; col < numCols; col++)
-				if (cells[row][col].isTarget())
-					num++;
-		return num;
+		return layout.getNumTargets();
 	}
 
 	public int numBoxes() {
-		int num = 0;
-		for (int row = 0; row < numRows; row++)
-			for (int col = 0; col < numCols; col++)
-				if (cells[row][col].hasBox())
-					num++;
-		return num;
+		return board.numBoxes();
 	}
 
 	public int numActors() {
@@ -125,20 +263,148 @@ public class Sokoban extends Observable {
 	}
 
 	public int numOnTarget() {
-		int num = 0;
-		for (int row = 0; row < numRows; row++)
-			for (int col = 0; col < numCols; col++)
-				if (cells[row][col].onTarget())
-					num++;
-		return num;
+		return board.numOnTarget();
 	}
 
+	/**
+	 * Is the puzzle solved: every box on a target, or in reverse mode every box
+	 * back where the forward puzzle started and the actor able to walk to where
+	 * it started
+	 */
 	public boolean onTarget() {
-		return numOnTarget() == numTargets();
+		if (reverse)
+			return (board.numBoxes() == goal.numBoxes()) && (board.nextBoxNotIn(goal, 0) == Layout.NONE)
+					&& canReach(board.getActor(), goal.getActor());
+		return board.onTarget();
+	}
+
+	/**
+	 * A puzzle in reverse mode, starting from this one's goal: every box on a
+	 * target, with the actor where it is now or, if that is a target, on the
+	 * nearest other floor. The actor pulls boxes back towards this puzzle's
+	 * start position (see {@link #pull(Direction)}).
+	 */
+	public Sokoban reverse() {
+		Board end = new Board(board);
+		for (int box = end.nextBox(0); box != Layout.NONE; box = end.nextBox(box + 1))
+			end.setBox(box, false);
+		for (int index = 0; index < layout.getNumCells(); index++)
+			if (layout.isTarget(index))
+				end.setBox(index, true);
+		end.setActor(nearestFree(end, board.getActor()));
+		Sokoban reversed = new Sokoban(end);
+		reversed.reverse = true;
+		reversed.goal = new Board(start);
+		return reversed;
+	}
+
+	public boolean isReverse() {
+		return reverse;
+	}
+
+	/**
+	 * The first cell without wall or box found breadth first from index
+	 */
+	private int nearestFree(Board end, int index) {
+		int numCells = layout.getNumCells();
+		int[] queue = new int[numCells];
+		boolean[] seen = new boolean[numCells];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = index;
+		seen[index] = true;
+		while (head < tail) {
+			int cell = queue[head++];
+			if (!end.hasBox(cell))
+				return cell;
+			for (Direction dir : Direction.values()) {
+				int next = layout.next(cell, dir);
+				if ((next != Layout.NONE) && !seen[next] && !layout.isWall(next)) {
+					seen[next] = true;
+					queue[tail++] = next;
+				}
+			}
+		}
+		throw new IllegalStateException("no room for the actor");
 	}
 
+	/**
+	 * Can the actor walk from one cell to the other, over floor without boxes
+	 */
+	private boolean canReach(int from, int to) {
+		int numCells = layout.getNumCells();
+		int[] queue = new int[numCells];
+		boolean[] seen = new boolean[numCells];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = from;
+		seen[from] = true;
+		while (head < tail) {
+			int cell = queue[head++];
+			if (cell == to)
+				return true;
+			for (Direction dir : Direction.values()) {
+				int next = layout.next(cell, dir);
+				if ((next != Layout.NONE) && !seen[next] && !layout.isWall(next) && !board.hasBox(next)) {
+					seen[next] = true;
+					queue[tail++] = next;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Can the puzzle certainly no longer be solved, because of a frozen box
+	 * off target or a corral whose boxes cannot reach targets (see
+	 * {@link Deadlocks})
+	 * 
+	 * @return deadlocked true if no moves can solve the puzzle
+	 */
+	public boolean isDeadlocked() {
+		if (deadlocks == null)
+			deadlocks = new Deadlocks(layout);
+		return deadlocks.isDeadlocked(board);
+	}
+
+	/**
+	 * A lower bound on the pushes still needed to solve the puzzle (see
+	 * {@link LowerBound}), kept up to date push by push
+	 * 
+	 * @return bound the bound, or LowerBound.INFINITY if it cannot be solved
+	 */
+	public int lowerBound() {
+		if (lowerBound == null) {
+			lowerBound = new LowerBound(layout);
+			lowerBound.compute(board);
+		}
+		return lowerBound.get();
+	}
+
+	/**
+	 * The lower bound after moving in direction dir, so that a player can rank
+	 * its choices; the puzzle is left as it is
+	 * 
+	 * @return bound the bound after the move
+	 */
+	public int lowerBound(Direction dir) {
+		if (!canMove(dir))
+			throw new IllegalArgumentException("cannot move " + dir);
+		int bound = lowerBound();
+		int box = layout.next(board.getActor(), dir);
+		if (!board.hasBox(box))
+			return bound;
+		return lowerBound.peek(box, layout.next(box, dir));
+	}
+
+	/**
+	 * Can the actor move in direction dir, decided on the packed Board; in
+	 * reverse mode it only ever walks onto empty floor
+	 */
 	public boolean canMove(Direction dir) {
-		return actorCell.canMove(dir);
+		if (reverse)
+			return board.canWalk(dir);
+		return board.canMove(dir);
 	}
 
 	public Vector<Direction> canMove() {
@@ -150,23 +416,175 @@ public class Sokoban extends Observable {
 		return dirs;
 	}
 
+	/**
+	 * The legal moves as a bitmask, with dir.bit() set if the actor can move in
+	 * direction dir; unlike canMove(), does not allocate
+	 * 
+	 * @return mask the legal move mask, 0 if there are none
+	 */
+	public int legalMoves() {
+		if (!reverse)
+			return board.legalMoves();
+		int mask = 0;
+		for (Direction dir : Direction.values())
+			if (board.canWalk(dir))
+				mask |= dir.bit();
+		return mask;
+	}
+
+	/**
+	 * Move the actor in direction dir, pushing any box ahead of it; in reverse
+	 * mode, only walking, leaving any box behind it where it is
+	 */
 	public void move(Direction dir) {
 		if (!canMove(dir))
 			throw new IllegalArgumentException("cannot move " + dir);
+		if (reverse) {
+			journal.record(dir, false);
+			reverseStep(dir, false);
+			fireChanged();
+			return;
+		}
+		journal.record(dir, step(dir));
+		fireChanged();
+	}
+
+	/**
+	 * Can the actor, in reverse mode, step in direction dir pulling the box
+	 * behind it; only if pushing the box back would be a legal move
+	 */
+	public boolean canPull(Direction dir) {
+		return reverse && board.canPull(dir);
+	}
+
+	/**
+	 * Step in direction dir, in reverse mode, pulling the box behind the actor
+	 * into the cell it leaves
+	 */
+	public void pull(Direction dir) {
+		if (!canPull(dir))
+			throw new IllegalArgumentException("cannot pull " + dir);
+		journal.record(dir, true);
+		reverseStep(dir, true);
+		fireChanged();
+	}
+
+	public boolean canUndo() {
+		return journal.canUndo();
+	}
+
+	public boolean canRedo() {
+		return journal.canRedo();
+	}
+
+	/**
+	 * The number of moves made since the start, not counting those undone
+	 * 
+	 * @return moves the number of moves
+	 */
+	public int numMoves() {
+		return journal.getPosition();
+	}
+
+	/**
+	 * Take back the last move, pulling back any box it pushed
+	 */
+	public void undo() {
+		byte entry = journal.undo();
+		Direction dir = MoveJournal.direction(entry);
+		if (reverse) {
+			if (MoveJournal.pushed(entry)) { // push back the box it pulled
+				Cell box = actorCell.getCell(dir.reverse());
+				moveBox(box, box.getCell(dir.reverse()));
+			}
+			reverseStep(dir.reverse(), false);
+			fireChanged();
+			return;
+		}
 		Cell oldActorCell = actorCell;
-		actorCell.move(dir);
-		actorCell = actorCell.getCell(dir);
 		Cell next = actorCell.getCell(dir);
-		if (!actorCell.hasActor())
-			throw new IllegalStateException("actorCell must have Actor");
-		setChanged();
-		notifyObservers(oldActorCell); // where actor was
-		setChanged();
-		notifyObservers(actorCell); // where actor is now
-		if (next != null) {
-			setChanged();
-			notifyObservers(next); // to where box may have been pushed
+		actorCell = actorCell.getCell(dir.reverse());
+		actorCell.setOccupant(oldActorCell.getOccupant());
+		oldActorCell.setOccupant(null);
+		board.setActor(actorCell.getIndex());
+		changed(oldActorCell); // where actor was
+		changed(actorCell); // where actor is now
+		if (MoveJournal.pushed(entry)) {
+			oldActorCell.setOccupant(next.getOccupant());
+			next.setOccupant(null);
+			board.setBox(next.getIndex(), false);
+			board.setBox(oldActorCell.getIndex(), true);
+			if (lowerBound != null)
+				lowerBound.update(next.getIndex(), oldActorCell.getIndex());
+			changed(next); // from where box was pulled
 		}
+		fireChanged();
+	}
+
+	/**
+	 * Make the last undone move again
+	 */
+	public void redo() {
+		byte entry = journal.redo();
+		Direction dir = MoveJournal.direction(entry);
+		if (reverse) {
+			reverseStep(dir, MoveJournal.pushed(entry));
+			fireChanged();
+			return;
+		}
+		step(dir);
+		fireChanged();
+	}
+
+	/**
+	 * Make a legal forward move on the Board, then bring the cells it changed
+	 * into line, for the UI
+	 *
+	 * @return pushed true if a box was pushed
+	 */
+	private boolean step(Direction dir) {
+		boolean pushed = board.step(dir);
+		Cell oldActorCell = actorCell;
+		actorCell = actorCell.getCell(dir);
+		if (pushed) {
+			Cell next = actorCell.getCell(dir);
+			next.setOccupant(actorCell.getOccupant());
+			changed(next); // to where box was pushed
+			if (lowerBound != null)
+				lowerBound.update(actorCell.getIndex(), next.getIndex());
+		}
+		actorCell.setOccupant(oldActorCell.getOccupant());
+		oldActorCell.setOccupant(null);
+		changed(oldActorCell); // where actor was
+		changed(actorCell); // where actor is now
+		return pushed;
+	}
+
+	/**
+	 * Walk in direction dir, in reverse mode, pulling the box behind along if
+	 * pulled
+	 */
+	private void reverseStep(Direction dir, boolean pulled) {
+		Cell oldActorCell = actorCell;
+		actorCell = actorCell.getCell(dir);
+		actorCell.setOccupant(oldActorCell.getOccupant());
+		oldActorCell.setOccupant(null);
+		board.setActor(actorCell.getIndex());
+		changed(oldActorCell); // where actor was
+		changed(actorCell); // where actor is now
+		if (pulled)
+			moveBox(oldActorCell.getCell(dir.reverse()), oldActorCell);
+	}
+
+	private void moveBox(Cell from, Cell to) {
+		to.setOccupant(from.getOccupant());
+		from.setOccupant(null);
+		board.setBox(from.getIndex(), false);
+		board.setBox(to.getIndex(), true);
+		if (lowerBound != null)
+			lowerBound.update(from.getIndex(), to.getIndex());
+		changed(from);
+		changed(to);
 	}
 
 	@Override
@@ -220,7 +638,20 @@ public class Sokoban extends Observable {
 	private int numCols = 0;
 	private Cell actorCell = null;
 	private Cell[][] cells = null;
-	private String startScreen = null;
+	private Layout layout = null;
+	private Board board = null;
+	private Board start = null;
+	private Deadlocks deadlocks = null;
+	private LowerBound lowerBound = null;
+	private boolean reverse = false;
+	private Board goal = null; // where the boxes must end up in reverse mode
+	private MoveJournal journal = new MoveJournal();
+	private SokobanListener[] listeners = NO_LISTENERS;
+	private int suspended = 0;
+	private long[] dirty = null;
+	private ArrayList<Cell> dirtyCells = new ArrayList<>();
+
+	private static final SokobanListener[] NO_LISTENERS = new SokobanListener[0];
 
 	private static boolean traceOn = false; // for debugging
 }
@@ -0,0 +1,30 @@
+package sokoban;
+
+import java.util.Collections;
+import java.util.EventObject;
+import java.util.List;
+
+/**
+ * The cells of a {@link Sokoban} puzzle whose display changed, each listed
+ * once, since the last event.
+ */
+@SuppressWarnings("serial")
+public class SokobanEvent extends EventObject {
+
+	public SokobanEvent(Sokoban puzzle, List<Cell> cells) {
+		super(puzzle);
+		if (cells == null)
+			throw new IllegalArgumentException("cells cannot be null");
+		this.cells = Collections.unmodifiableList(cells);
+	}
+
+	public Sokoban getPuzzle() {
+		return (Sokoban) getSource();
+	}
+
+	public List<Cell> getCells() {
+		return cells;
+	}
+
+	private final List<Cell> cells;
+}
@@ -0,0 +1,12 @@
+package sokoban;
+
+import java.util.EventListener;
+
+/**
+ * Receives one {@link SokobanEvent} per move, undo, redo or reset of a
+ * {@link Sokoban} puzzle, or one per batch while notifications are suspended.
+ */
+public interface SokobanListener extends EventListener {
+
+	public void puzzleChanged(SokobanEvent event);
+}
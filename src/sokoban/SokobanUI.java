@@ -2,13 +2,18 @@ package sokoban;
 
 import java.io.File;
 import java.util.Scanner;
-import java.util.Vector;
 
 public class SokobanUI {
 
 	public SokobanUI() {
+		this(new Sokoban(new File(FILENAME)));
+	}
+
+	public SokobanUI(Sokoban puzzle) {
+		if (puzzle == null)
+			throw new IllegalArgumentException("puzzle cannot be null");
 		scnr = new Scanner(System.in);
-		puzzle = new Sokoban(new File(FILENAME));
+		this.puzzle = puzzle;
 		player = new RandomPlayer();
 	}
 
@@ -34,6 +39,7 @@ public class SokobanUI {
 		System.out.println("   Move West          [W]");
 		System.out.println("   Player move        [P]");
 		System.out.println("   Undo move          [U]");
+		System.out.println("   Redo move          [R]");
 		System.out.println("   Restart puzzle [Clear]");
 		System.out.println("   Save to file    [Save]");
 		System.out.println("   Load from file  [Load]");
@@ -48,6 +54,7 @@ public class SokobanUI {
 	private void execute(String command) {
 		if (command.equalsIgnoreCase("Quit")) {
 			System.out.println("Program closing down");
+			DeadlockDatabase.getDefault().save();
 			System.exit(0);
 		} else if (command.equalsIgnoreCase("N")) {
 			north();
@@ -60,13 +67,15 @@ public class SokobanUI {
 		} else if (command.equalsIgnoreCase("P")) {
 			playerMove();
 		} else if (command.equalsIgnoreCase("U")) {
-			System.out.println("not implemented yet");
+			undo();
+		} else if (command.equalsIgnoreCase("R")) {
+			redo();
 		} else if (command.equalsIgnoreCase("Clear")) {
 			System.out.println("not implemented yet");
 		} else if (command.equalsIgnoreCase("Save")) {
-			System.out.println("not implemented yet");
+			save();
 		} else if (command.equalsIgnoreCase("Load")) {
-			System.out.println("not implemented yet");
+			load();
 		} else {
 			System.out.println("Unknown command (" + command + ")");
 		}
@@ -89,9 +98,54 @@ public class SokobanUI {
 	}
 
 	private void playerMove() {
-		Vector<Direction> choices = puzzle.canMove();
-		Direction choice = player.move(choices);
-		move(choice);
+		int choices = puzzle.legalMoves();
+		if (choices == 0) {
+			System.out.println("no moves left");
+			return;
+		}
+		move(Direction.of(player.move(choices)));
+	}
+
+	private void undo() {
+		if (!puzzle.canUndo()) {
+			System.out.println("nothing to undo");
+			return;
+		}
+		puzzle.undo();
+	}
+
+	private void redo() {
+		if (!puzzle.canRedo()) {
+			System.out.println("nothing to redo");
+			return;
+		}
+		puzzle.redo();
+	}
+
+	private void save() {
+		String name = getFileName();
+		try {
+			StateFile.save(new File(name), puzzle);
+			System.out.println("saved to " + name);
+		} catch (SokobanException e) {
+			System.out.println("cannot save (" + e.getMessage() + ")");
+		}
+	}
+
+	private void load() {
+		String name = getFileName();
+		try {
+			puzzle = StateFile.load(new File(name));
+			System.out.println("loaded from " + name);
+		} catch (SokobanException e) {
+			System.out.println("cannot load (" + e.getMessage() + ")");
+		}
+	}
+
+	private String getFileName() {
+		System.out.print("Enter file name [" + SAVE_FILENAME + "]: ");
+		String name = scnr.nextLine().trim();
+		return name.isEmpty() ? SAVE_FILENAME : name;
 	}
 
 	private void move(Direction dir) {
@@ -104,8 +158,21 @@ public class SokobanUI {
 			System.out.println("game won!");
 	}
 
+	/**
+	 * Play the default screen, or a level from a level pack
+	 * 
+	 * @param args [pack file [level number, from 1]]
+	 */
 	public static void main(String[] args) {
-		SokobanUI ui = new SokobanUI();
+		SokobanUI ui = null;
+		if (args.length == 0)
+			ui = new SokobanUI();
+		else {
+			LevelPack pack = new LevelPack(new File(args[0]));
+			int level = (args.length > 1) ? Integer.parseInt(args[1]) : 1;
+			System.out.println(pack.getTitle(level - 1));
+			ui = new SokobanUI(pack.getLevel(level - 1));
+		}
 		ui.menu();
 	}
 
@@ -116,9 +183,10 @@ public class SokobanUI {
 
 	private Scanner scnr = null;
 	private Sokoban puzzle = null;
-	private Player player = null;
+	private FastPlayer player = null;
 
 	private static String FILENAME = "screens/screen.1";
+	private static String SAVE_FILENAME = "sokoban.sav";
 
 	private static boolean traceOn = false; // for debugging
 }
@@ -0,0 +1,248 @@
+package sokoban;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks solutions in LURD notation by replaying them on a {@link Board}, so
+ * there are no listeners to notify and each move is validated once. Whitespace
+ * is skipped. Upper case marks a push; by default a mismatch is tolerated, as
+ * some sources write every move in lower case. In bulk, many (level,
+ * solution) pairs are checked at once on a work-stealing pool, and a level
+ * that recurs is parsed only once.
+ */
+public class SolutionVerifier {
+
+	/**
+	 * The verdict on one solution
+	 */
+	public static class Result {
+
+		Result(int index, int failedStep, int moves, int pushes, boolean solved, String detail) {
+			this.index = index;
+			this.failedStep = failedStep;
+			this.moves = moves;
+			this.pushes = pushes;
+			this.solved = solved;
+			this.detail = detail;
+		}
+
+		/**
+		 * The pair's position in the bulk input, or 0
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * Was every step legal
+		 */
+		public boolean isValid() {
+			return failedStep < 0;
+		}
+
+		/**
+		 * Was every step legal, leaving every box on a target
+		 */
+		public boolean isSolved() {
+			return solved;
+		}
+
+		/**
+		 * The offset in the solution of the first illegal step, or -1
+		 */
+		public int getFailedStep() {
+			return failedStep;
+		}
+
+		/**
+		 * The number of legal moves made, up to any illegal step
+		 */
+		public int getMoves() {
+			return moves;
+		}
+
+		public int getPushes() {
+			return pushes;
+		}
+
+		/**
+		 * Why the solution failed, or null
+		 */
+		public String getDetail() {
+			return detail;
+		}
+
+		@Override
+		public String toString() {
+			return (index + 1) + "\t" + (solved ? "SOLVED" : isValid() ? "UNSOLVED" : "ILLEGAL") + "\t" + moves
+					+ "\t" + pushes + ((detail == null) ? "" : "\t" + detail);
+		}
+
+		private final int index;
+		private final int failedStep;
+		private final int moves;
+		private final int pushes;
+		private final boolean solved;
+		private final String detail;
+	}
+
+	public SolutionVerifier() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public SolutionVerifier(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be positive");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Whether a push in lower case, or a plain move in upper case, is an
+	 * illegal step
+	 */
+	public void setStrict(boolean strict) {
+		this.strict = strict;
+	}
+
+	/**
+	 * Check a solution from the puzzle's current position, leaving the puzzle
+	 * as it is
+	 */
+	public Result verify(Sokoban puzzle, String lurd) {
+		if (puzzle == null)
+			throw new IllegalArgumentException("puzzle cannot be null");
+		return verify(puzzle.toBoard(), lurd);
+	}
+
+	/**
+	 * Check a solution from start, leaving start as it is
+	 */
+	public Result verify(Board start, String lurd) {
+		if (start == null)
+			throw new IllegalArgumentException("start cannot be null");
+		if (lurd == null)
+			throw new IllegalArgumentException("lurd cannot be null");
+		return replay(0, new Board(start), lurd);
+	}
+
+	/**
+	 * Check the solutions for the levels, pair by pair; the results are in the
+	 * same order
+	 */
+	public List<Result> verifyAll(List<String> screens, List<String> solutions) {
+		if (screens == null)
+			throw new IllegalArgumentException("screens cannot be null");
+		if (solutions == null)
+			throw new IllegalArgumentException("solutions cannot be null");
+		if (screens.size() != solutions.size())
+			throw new IllegalArgumentException("need one solution per level");
+		int size = screens.size();
+		Result[] results = new Result[size];
+		ConcurrentHashMap<String, Board> starts = new ConcurrentHashMap<>();
+		ExecutorService pool = Executors.newWorkStealingPool(parallelism);
+		try {
+			ArrayList<Future<?>> chunks = new ArrayList<>();
+			for (int from = 0; from < size; from += CHUNK) {
+				final int first = from;
+				final int last = Math.min(size, from + CHUNK);
+				chunks.add(pool.submit(() -> {
+					for (int i = first; i < last; i++)
+						results[i] = verify(i, starts, screens.get(i), solutions.get(i));
+				}));
+			}
+			for (Future<?> chunk : chunks)
+				chunk.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SokobanException("verification interrupted");
+		} catch (ExecutionException e) {
+			throw new SokobanException("" + e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Check a solution for each level of a pack, in order
+	 */
+	public List<Result> verifyAll(LevelPack pack, List<String> solutions) {
+		if (pack == null)
+			throw new IllegalArgumentException("pack cannot be null");
+		ArrayList<String> screens = new ArrayList<>(pack.size());
+		for (int level = 0; level < pack.size(); level++)
+			screens.add(pack.getScreen(level));
+		return verifyAll(screens, solutions);
+	}
+
+	private Result verify(int index, ConcurrentHashMap<String, Board> starts, String screen, String lurd) {
+		if ((screen == null) || (lurd == null))
+			return new Result(index, 0, 0, 0, false, "missing level or solution");
+		Board start;
+		try {
+			start = starts.computeIfAbsent(screen, s -> new Sokoban(s).toBoard());
+		} catch (RuntimeException e) {
+			return new Result(index, 0, 0, 0, false, "" + e);
+		}
+		return replay(index, new Board(start), lurd);
+	}
+
+	private Result replay(int index, Board board, String lurd) {
+		int moves = 0;
+		int pushes = 0;
+		for (int i = 0; i < lurd.length(); i++) {
+			char c = lurd.charAt(i);
+			if (Character.isWhitespace(c))
+				continue;
+			Direction dir = Direction.fromLurd(c);
+			if (dir == null)
+				return new Result(index, i, moves, pushes, false, "not a LURD move '" + c + "' at " + i);
+			if (!board.canMove(dir))
+				return new Result(index, i, moves, pushes, false, "cannot move " + dir + " at " + i);
+			boolean pushed = board.step(dir);
+			if (strict && (pushed != Character.isUpperCase(c))) {
+				String detail = (pushed ? "unmarked push " : "marked push without a box ") + dir + " at " + i;
+				return new Result(index, i, moves, pushes, false, detail);
+			}
+			moves++;
+			if (pushed)
+				pushes++;
+		}
+		return new Result(index, -1, moves, pushes, board.onTarget(), null);
+	}
+
+	/**
+	 * Check the solutions in a file, one LURD line per level of a pack
+	 *
+	 * @param args pack-file solution-file
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("usage: SolutionVerifier pack-file solution-file");
+			return;
+		}
+		List<String> solutions;
+		try {
+			solutions = Files.readAllLines(new File(args[1]).toPath());
+		} catch (IOException e) {
+			throw new SokobanException("" + e);
+		}
+		for (Result result : new SolutionVerifier().verifyAll(new LevelPack(new File(args[0])), solutions))
+			System.out.println(result);
+	}
+
+	private static final int CHUNK = 64; // pairs per task
+
+	private final int parallelism;
+	private boolean strict = false;
+}
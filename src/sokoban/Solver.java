@@ -0,0 +1,629 @@
+package sokoban;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Searches for a sequence of moves that puts every box on a target, using the
+ * same move rules as {@link Sokoban#canMove(Direction)}. Runs A* or IDA* over
+ * {@link Board} positions, or A* over the nodes of a {@link PushGraph}, within
+ * optional node and time budgets, and can be cancelled from another thread.
+ * IDA* detects repeated positions through a {@link TranspositionTable} keyed
+ * by the Zobrist hash. PUSH_A_STAR finds the fewest pushes rather than the
+ * fewest moves, and expands far fewer nodes. BIDIRECTIONAL also searches back
+ * from the goal by pulls, until the two searches meet on a position; it
+ * finds long solutions with far fewer nodes, though not always the fewest
+ * pushes. PUSH_A_STAR_OFF_HEAP is PUSH_A_STAR with its positions kept off
+ * the Java heap, in a {@link StateStore} and a {@link BucketQueue}, within a
+ * memory limit. Every mode is guided by the {@link LowerBound} matching and
+ * prunes {@link Deadlocks}.
+ */
+public class Solver {
+
+	public enum Mode {
+		A_STAR, IDA_STAR, PUSH_A_STAR, BIDIRECTIONAL, PUSH_A_STAR_OFF_HEAP
+	}
+
+	public enum Status {
+		READY, RUNNING, SOLVED, UNSOLVABLE, NODE_LIMIT, TIME_LIMIT, MEMORY_LIMIT, CANCELLED
+	}
+
+	public Solver() {
+		this(Mode.A_STAR);
+	}
+
+	public Solver(Mode mode) {
+		if (mode == null)
+			throw new IllegalArgumentException("mode cannot be null");
+		this.mode = mode;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public void setNodeLimit(long nodeLimit) {
+		if (nodeLimit <= 0)
+			throw new IllegalArgumentException("nodeLimit must be positive");
+		this.nodeLimit = nodeLimit;
+	}
+
+	public void setTimeLimit(long millis) {
+		if (millis <= 0)
+			throw new IllegalArgumentException("time limit must be positive");
+		this.timeLimit = millis * 1000000L;
+	}
+
+	/**
+	 * Set the most memory PUSH_A_STAR_OFF_HEAP may hold for positions and its
+	 * open list, in bytes; it takes only what the search needs
+	 */
+	public void setMemoryLimit(long bytes) {
+		if (bytes < MIN_MEMORY_LIMIT)
+			throw new IllegalArgumentException("memory limit must be at least " + MIN_MEMORY_LIMIT);
+		this.memoryLimit = bytes;
+	}
+
+	/**
+	 * Ask a running solve to stop, or the next one if none is running yet; it
+	 * returns null with status CANCELLED
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Set the number of entries in the transposition table used by IDA*
+	 */
+	public void setTableSize(int tableSize) {
+		if (tableSize < 2)
+			throw new IllegalArgumentException("tableSize must be at least 2");
+		this.tableSize = Integer.highestOneBit(tableSize);
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Solve the puzzle from its current position
+	 *
+	 * @return the moves to make, or null if no solution was found
+	 */
+	public List<Direction> solve(Sokoban puzzle) {
+		if (puzzle == null)
+			throw new IllegalArgumentException("puzzle cannot be null");
+		return solve(puzzle.toBoard());
+	}
+
+	public List<Direction> solve(Board start) {
+		if (start == null)
+			throw new IllegalArgumentException("start cannot be null");
+		nodes = 0;
+		deadline = (timeLimit == NO_LIMIT) ? NO_LIMIT : System.nanoTime() + timeLimit;
+		status = Status.RUNNING;
+		if ((deadlocks == null) || (deadlocks.getLayout() != start.getLayout())) {
+			deadlocks = new Deadlocks(start.getLayout());
+			lowerBound = new LowerBound(start.getLayout());
+		}
+		List<Direction> moves;
+		try {
+			if (mode == Mode.A_STAR)
+				moves = aStar(new Board(start));
+			else if (mode == Mode.IDA_STAR)
+				moves = idaStar(new Board(start));
+			else if (mode == Mode.PUSH_A_STAR)
+				moves = pushAStar(new Board(start));
+			else if (mode == Mode.PUSH_A_STAR_OFF_HEAP)
+				moves = offHeapAStar(new Board(start));
+			else
+				moves = bidirectional(new Board(start));
+			if (moves != null)
+				status = Status.SOLVED;
+		} finally {
+			cancelled = false; // a cancel that came before the solve began still counts
+		}
+		trace("solve: " + status + " after " + nodes + " nodes");
+		return moves;
+	}
+
+	private List<Direction> aStar(Board start) {
+		PriorityQueue<Node> open = new PriorityQueue<>();
+		HashMap<Board, Integer> best = new HashMap<>();
+		open.add(new Node(start, 0, estimate(start), Layout.NONE, null, null));
+		best.put(start, 0);
+		while (!open.isEmpty()) {
+			Node node = open.poll();
+			if (best.get(node.board) < node.g)
+				continue; // superseded by a cheaper path
+			if (node.board.onTarget())
+				return path(node);
+			if (!expand())
+				return null;
+			for (Direction dir : Direction.values()) {
+				if (!node.board.canMove(dir))
+					continue;
+				Board next = new Board(node.board);
+				boolean pushed = next.step(dir);
+				if (pushed && isDeadlocked(next, dir))
+					continue;
+				int g = node.g + 1;
+				Integer seen = best.get(next);
+				if ((seen != null) && (seen <= g))
+					continue;
+				int h = pushed ? estimate(next) : node.f - node.g; // a walk leaves the bound as it was
+				if (h == INFINITY)
+					continue;
+				best.put(next, g);
+				open.add(new Node(next, g, g + h, Layout.NONE, dir, node));
+			}
+		}
+		status = Status.UNSOLVABLE;
+		return null;
+	}
+
+	/**
+	 * A* over push graph nodes, each held as a Board with the actor normalized
+	 * to its region's top-left cell; the walks are filled in at the end
+	 */
+	private List<Direction> pushAStar(Board start) {
+		Layout layout = start.getLayout();
+		PushGraph graph = new PushGraph(layout);
+		int[] pushes = new int[4 * start.numBoxes()];
+		Board root = graph.normalize(start);
+		PriorityQueue<Node> open = new PriorityQueue<>();
+		HashMap<Board, Integer> best = new HashMap<>();
+		open.add(new Node(root, 0, estimate(root), Layout.NONE, null, null));
+		best.put(root, 0);
+		while (!open.isEmpty()) {
+			Node node = open.poll();
+			if (best.get(node.board) < node.g)
+				continue; // superseded by a cheaper path
+			if (node.board.onTarget())
+				return walk(graph, start, node, null);
+			Board board = node.board;
+			graph.reach(board);
+			// corrals cost more to check, so only for nodes that get this far
+			if ((node.parent != null) && deadlocks.isCorralDeadlock(board, layout.next(node.box, node.dir), graph))
+				continue;
+			if (!expand())
+				return null;
+			lowerBound.compute(board);
+			int count = 0;
+			for (int box = board.nextBox(0); box != Layout.NONE; box = board.nextBox(box + 1)) {
+				for (Direction dir : DIRECTIONS) {
+					if (graph.canPush(board, box, dir))
+						pushes[count++] = (box << 2) | dir.ordinal();
+				}
+			}
+			for (int i = 0; i < count; i++) {
+				int box = pushes[i] >>> 2;
+				Direction dir = DIRECTIONS[pushes[i] & 3];
+				Board next = new Board(board);
+				next.setBox(box, false);
+				int to = layout.next(box, dir);
+				next.setBox(to, true);
+				next.setActor(box);
+				if (deadlocks.isFreezeDeadlock(next, to))
+					continue;
+				int g = node.g + 1;
+				int h = lowerBound.peek(box, to);
+				if (h == INFINITY)
+					continue;
+				next.setActor(graph.reach(next));
+				Integer seen = best.get(next);
+				if ((seen != null) && (seen <= g))
+					continue;
+				best.put(next, g);
+				open.add(new Node(next, g, g + h, box, dir, node));
+			}
+		}
+		status = Status.UNSOLVABLE;
+		return null;
+	}
+
+	/**
+	 * pushAStar with the nodes in a StateStore, by id, and the open list in a
+	 * BucketQueue by f; a node whose f has since been lowered is skipped
+	 */
+	private List<Direction> offHeapAStar(Board start) {
+		Layout layout = start.getLayout();
+		PushGraph graph = new PushGraph(layout);
+		int[] pushes = new int[4 * start.numBoxes()];
+		long queueBytes = Math.max(memoryLimit / 8, MIN_MEMORY_LIMIT / 2);
+		StateStore store = new StateStore(layout, memoryLimit - queueBytes);
+		BucketQueue open = new BucketQueue(queueBytes);
+		Board root = graph.normalize(start);
+		int h = estimate(root);
+		if (h == INFINITY) {
+			status = Status.UNSOLVABLE;
+			return null;
+		}
+		open.add(store.add(root, 0, h, StateStore.NONE, 0), h);
+		while (!open.isEmpty()) {
+			int f = open.peekPriority();
+			int id = open.poll();
+			if (store.getF(id) != f)
+				continue; // superseded by a cheaper path
+			Board board = store.getBoard(id);
+			if (board.onTarget())
+				return walk(graph, start, store, id);
+			graph.reach(board);
+			int last = store.getPush(id);
+			if ((store.getParent(id) != StateStore.NONE)
+					&& deadlocks.isCorralDeadlock(board, layout.next(last >>> 2, DIRECTIONS[last & 3]), graph))
+				continue;
+			if (!expand())
+				return null;
+			lowerBound.compute(board);
+			int count = 0;
+			for (int box = board.nextBox(0); box != Layout.NONE; box = board.nextBox(box + 1)) {
+				for (Direction dir : DIRECTIONS) {
+					if (graph.canPush(board, box, dir))
+						pushes[count++] = (box << 2) | dir.ordinal();
+				}
+			}
+			int g = store.getG(id) + 1;
+			for (int i = 0; i < count; i++) {
+				int box = pushes[i] >>> 2;
+				int to = layout.next(box, DIRECTIONS[pushes[i] & 3]);
+				Board next = new Board(board);
+				next.setBox(box, false);
+				next.setBox(to, true);
+				next.setActor(box);
+				if (deadlocks.isFreezeDeadlock(next, to))
+					continue;
+				h = lowerBound.peek(box, to);
+				if (h == INFINITY)
+					continue;
+				next.setActor(graph.reach(next));
+				int child = store.add(next, g, g + h, id, pushes[i]);
+				if (child == StateStore.NONE)
+					continue;
+				if ((child == StateStore.FULL) || !open.add(child, g + h)) {
+					status = Status.MEMORY_LIMIT;
+					return null;
+				}
+			}
+		}
+		status = Status.UNSOLVABLE;
+		return null;
+	}
+
+	/**
+	 * Replay the pushes leading to the node at id from the real start
+	 */
+	private static List<Direction> walk(PushGraph graph, Board start, StateStore store, int id) {
+		int[] pushes = new int[store.getG(id)];
+		int count = 0;
+		for (int n = id; store.getParent(n) != StateStore.NONE; n = store.getParent(n))
+			pushes[count++] = store.getPush(n);
+		Board board = new Board(start);
+		ArrayList<Direction> moves = new ArrayList<>();
+		while (count > 0) {
+			int push = pushes[--count];
+			graph.apply(board, push >>> 2, DIRECTIONS[push & 3], moves);
+		}
+		return moves;
+	}
+
+	/**
+	 * Best-first over pushes from the start and over pulls from each goal
+	 * position, expanding the side with the smaller frontier, until a position
+	 * turns up on both sides
+	 */
+	private List<Direction> bidirectional(Board start) {
+		Layout layout = start.getLayout();
+		PushGraph graph = new PushGraph(layout);
+		int[] pushes = new int[4 * start.numBoxes()];
+		int[] startBoxes = new int[start.numBoxes()];
+		int n = 0;
+		for (int box = start.nextBox(0); box != Layout.NONE; box = start.nextBox(box + 1))
+			startBoxes[n++] = box;
+		LowerBound toStart = new LowerBound(layout, startBoxes, true);
+		HashMap<Board, Node> forward = new HashMap<>();
+		HashMap<Board, Node> backward = new HashMap<>();
+		PriorityQueue<Node> forwardOpen = new PriorityQueue<>();
+		PriorityQueue<Node> backwardOpen = new PriorityQueue<>();
+		Board root = graph.normalize(start);
+		if (root.onTarget())
+			return new ArrayList<>();
+		int h = estimate(root);
+		if (h == INFINITY) {
+			status = Status.UNSOLVABLE;
+			return null;
+		}
+		Node rootNode = new Node(root, 0, h, Layout.NONE, null, null);
+		forward.put(root, rootNode);
+		forwardOpen.add(rootNode);
+		// every box on a target, with the actor in each region it could be left in
+		Board goal = new Board(start);
+		for (int box = goal.nextBox(0); box != Layout.NONE; box = goal.nextBox(box + 1))
+			goal.setBox(box, false);
+		for (int target = 0; target < layout.getNumCells(); target++)
+			if (layout.isTarget(target))
+				goal.setBox(target, true);
+		h = toStart.compute(goal);
+		boolean[] covered = new boolean[layout.getNumCells()];
+		for (int cell = 0; cell < layout.getNumCells(); cell++) {
+			if (covered[cell] || layout.isWall(cell) || goal.hasBox(cell))
+				continue;
+			goal.setActor(cell);
+			Board region = graph.normalize(goal);
+			for (int other = cell; other < layout.getNumCells(); other++)
+				if (graph.isReachable(other))
+					covered[other] = true;
+			Node node = new Node(region, 0, h, Layout.NONE, null, null);
+			if (forward.containsKey(region))
+				return walk(graph, start, forward.get(region), node);
+			backward.put(region, node);
+			backwardOpen.add(node);
+		}
+		while (!forwardOpen.isEmpty() && !backwardOpen.isEmpty()) {
+			boolean forwards = forwardOpen.size() <= backwardOpen.size();
+			Node node = forwards ? forwardOpen.poll() : backwardOpen.poll();
+			if (!expand())
+				return null;
+			Board board = node.board;
+			graph.reach(board);
+			if (forwards)
+				lowerBound.compute(board);
+			else
+				toStart.compute(board);
+			int count = 0;
+			for (int box = board.nextBox(0); box != Layout.NONE; box = board.nextBox(box + 1)) {
+				for (Direction dir : DIRECTIONS) {
+					if (forwards ? graph.canPush(board, box, dir) : graph.canPull(board, box, dir))
+						pushes[count++] = (box << 2) | dir.ordinal();
+				}
+			}
+			for (int i = 0; i < count; i++) {
+				int box = pushes[i] >>> 2;
+				Direction dir = DIRECTIONS[pushes[i] & 3];
+				int to = layout.next(box, dir);
+				Board next = new Board(board);
+				next.setBox(box, false);
+				next.setBox(to, true);
+				next.setActor(forwards ? box : layout.next(to, dir));
+				if (forwards && deadlocks.isFreezeDeadlock(next, to))
+					continue;
+				h = forwards ? lowerBound.peek(box, to) : toStart.peek(box, to);
+				if (h == INFINITY)
+					continue;
+				next.setActor(graph.reach(next));
+				if ((forwards ? forward : backward).containsKey(next))
+					continue;
+				// a pull is kept as the push that undoes it
+				Node child = forwards ? new Node(next, node.g + 1, node.g + 1 + h, box, dir, node)
+						: new Node(next, node.g + 1, node.g + 1 + h, to, dir.reverse(), node);
+				Node met = (forwards ? backward : forward).get(next);
+				if (met != null)
+					return forwards ? walk(graph, start, child, met) : walk(graph, start, met, child);
+				(forwards ? forward : backward).put(next, child);
+				(forwards ? forwardOpen : backwardOpen).add(child);
+			}
+		}
+		status = Status.UNSOLVABLE;
+		return null;
+	}
+
+	/**
+	 * Replay the pushes leading to node from the real start, walking the actor
+	 * to each one; then, if back is not null, the pushes that undo the pulls
+	 * leading to back from the goal
+	 */
+	private static List<Direction> walk(PushGraph graph, Board start, Node node, Node back) {
+		ArrayList<Node> pushes = new ArrayList<>(node.g);
+		for (Node n = node; n.parent != null; n = n.parent)
+			pushes.add(n);
+		Collections.reverse(pushes);
+		for (Node n = back; (n != null) && (n.parent != null); n = n.parent)
+			pushes.add(n);
+		Board board = new Board(start);
+		ArrayList<Direction> moves = new ArrayList<>();
+		for (Node push : pushes)
+			graph.apply(board, push.box, push.dir, moves);
+		return moves;
+	}
+
+	private List<Direction> idaStar(Board start) {
+		int h = estimate(start);
+		if (h == INFINITY) {
+			status = Status.UNSOLVABLE;
+			return null;
+		}
+		if ((table == null) || (table.getCapacity() != tableSize))
+			table = new TranspositionTable(tableSize);
+		ArrayList<Direction> moves = new ArrayList<>();
+		ArrayList<Board> stack = new ArrayList<>();
+		stack.add(start);
+		int bound = h;
+		while (true) {
+			table.clear();
+			table.put(start.getHash(), 0, bound);
+			int result = idaSearch(stack, 0, bound, moves);
+			if (result == FOUND)
+				return moves;
+			if (result == ABORTED)
+				return null;
+			if (result == INFINITY) {
+				status = Status.UNSOLVABLE;
+				return null;
+			}
+			bound = result;
+			trace("idaStar: bound " + bound);
+		}
+	}
+
+	private int idaSearch(List<Board> stack, int g, int bound, List<Direction> moves) {
+		Board board = stack.get(g);
+		int f = g + lowerBound.get();
+		if (f > bound)
+			return f;
+		if (board.onTarget())
+			return FOUND;
+		if (!expand())
+			return ABORTED;
+		if (stack.size() == g + 1)
+			stack.add(new Board(board));
+		Board next = stack.get(g + 1);
+		int min = INFINITY;
+		for (Direction dir : Direction.values()) {
+			if (!board.canMove(dir))
+				continue;
+			next.copyFrom(board);
+			boolean pushed = next.step(dir);
+			if (pushed && isDeadlocked(next, dir))
+				continue;
+			// skip positions already reached as cheaply, including those on the path
+			long key = next.getHash();
+			int seen = table.get(key);
+			if ((seen != TranspositionTable.MISSING) && (seen <= g + 1))
+				continue;
+			table.put(key, g + 1, bound - g - 1);
+			int from = next.getActor();
+			int to = next.getLayout().next(from, dir);
+			if (pushed && (lowerBound.update(from, to) == INFINITY)) {
+				lowerBound.update(to, from);
+				continue;
+			}
+			moves.add(dir);
+			int result = idaSearch(stack, g + 1, bound, moves);
+			if ((result == FOUND) || (result == ABORTED))
+				return result;
+			if (pushed)
+				lowerBound.update(to, from); // back to this node's bound
+			moves.remove(moves.size() - 1);
+			if (result < min)
+				min = result;
+		}
+		return min;
+	}
+
+	/**
+	 * Did the push just made in direction dir leave board unsolvable
+	 */
+	private boolean isDeadlocked(Board board, Direction dir) {
+		return deadlocks.isDeadlockedAfterPush(board, board.getLayout().next(board.getActor(), dir));
+	}
+
+	/**
+	 * Count one node expansion against the budgets
+	 *
+	 * @return false if the search must stop
+	 */
+	private boolean expand() {
+		if (cancelled) {
+			status = Status.CANCELLED;
+			return false;
+		}
+		if (nodes >= nodeLimit) {
+			status = Status.NODE_LIMIT;
+			return false;
+		}
+		nodes++;
+		if ((deadline != NO_LIMIT) && ((nodes & 1023) == 0) && (System.nanoTime() - deadline > 0)) {
+			status = Status.TIME_LIMIT;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The min-cost matching of boxes to targets (see {@link LowerBound}); never
+	 * more than the pushes, or moves, still needed
+	 */
+	private int estimate(Board board) {
+		return lowerBound.compute(board);
+	}
+
+	private static List<Direction> path(Node node) {
+		ArrayList<Direction> moves = new ArrayList<>(node.g);
+		for (Node n = node; n.parent != null; n = n.parent)
+			moves.add(n.dir);
+		Collections.reverse(moves);
+		return moves;
+	}
+
+	/**
+	 * Write moves as a LURD string, upper case for pushes
+	 *
+	 * @param start the position the moves are made from
+	 * @return lurd the moves in LURD notation
+	 */
+	public static String toLurd(Board start, List<Direction> moves) {
+		if (start == null)
+			throw new IllegalArgumentException("start cannot be null");
+		if (moves == null)
+			throw new IllegalArgumentException("moves cannot be null");
+		Board board = new Board(start);
+		StringBuilder b = new StringBuilder(moves.size());
+		for (Direction dir : moves) {
+			if (!board.canMove(dir))
+				throw new IllegalArgumentException("cannot move " + dir);
+			b.append(dir.toLurd(board.step(dir)));
+		}
+		return b.toString();
+	}
+
+	public static void trace(String s) {
+		if (traceOn)
+			System.out.println("trace: " + s);
+	}
+
+	private static class Node implements Comparable<Node> {
+
+		Node(Board board, int g, int f, int box, Direction dir, Node parent) {
+			this.board = board;
+			this.g = g;
+			this.f = f;
+			this.box = box;
+			this.dir = dir;
+			this.parent = parent;
+		}
+
+		@Override
+		public int compareTo(Node other) {
+			if (f != other.f)
+				return Integer.compare(f, other.f);
+			return Integer.compare(other.g, g); // prefer deeper nodes on ties
+		}
+
+		final Board board;
+		final int g;
+		final int f;
+		final int box; // the box pushed, for push graph nodes
+		final Direction dir;
+		final Node parent;
+	}
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final long NO_LIMIT = Long.MAX_VALUE;
+	private static final int INFINITY = Integer.MAX_VALUE;
+	private static final int FOUND = -1;
+	private static final int ABORTED = -2;
+	private static final long MIN_MEMORY_LIMIT = 1L << 16;
+	private static final long DEFAULT_MEMORY_LIMIT = 256L << 20;
+
+	private final Mode mode;
+	private int tableSize = 1 << 20;
+	private TranspositionTable table = null;
+	private Deadlocks deadlocks = null;
+	private LowerBound lowerBound = null;
+	private long nodeLimit = NO_LIMIT;
+	private long memoryLimit = DEFAULT_MEMORY_LIMIT;
+	private long timeLimit = NO_LIMIT;
+	private long deadline = NO_LIMIT;
+	private long nodes = 0;
+	private volatile boolean cancelled = false;
+	private volatile Status status = Status.READY;
+
+	private static boolean traceOn = false; // for debugging
+}
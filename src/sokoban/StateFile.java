@@ -0,0 +1,368 @@
+package sokoban;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Game states saved in binary, any number to a file. Each state holds the
+ * level's size, its walls and targets as bitsets, the boxes as a bitset, the
+ * actor's cell and the move journal, so a {@link Sokoban} comes back with its
+ * undo and redo history. A file is read by mapping it into memory: states are
+ * found by their lengths, and read straight from the mapping into a
+ * {@link Board}, and a Sokoban built from that, without any text. States of
+ * the same level share one Layout.
+ * A StateFile may be read by many threads at once.
+ */
+public class StateFile {
+
+	/**
+	 * Adds states to the end of a file, creating it if need be; a state left
+	 * cut short at the end, as by a crash while writing, is dropped first
+	 */
+	public static class Writer implements Closeable {
+
+		Writer(File file) throws IOException {
+			boolean fresh = !file.exists() || (file.length() == 0);
+			if (!fresh)
+				dropPartial(file);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+			if (fresh) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+			}
+		}
+
+		/**
+		 * Write the puzzle's position and its moves
+		 */
+		public void write(Sokoban puzzle) {
+			if (puzzle == null)
+				throw new IllegalArgumentException("puzzle cannot be null");
+			if (puzzle.isReverse())
+				throw new IllegalArgumentException("cannot save a puzzle in reverse mode");
+			write(puzzle.getBoard(), puzzle.getJournal());
+		}
+
+		/**
+		 * Write the board's position, with no moves
+		 */
+		public void write(Board board) {
+			if (board == null)
+				throw new IllegalArgumentException("board cannot be null");
+			write(board, null);
+		}
+
+		private void write(Board board, MoveJournal journal) {
+			Layout layout = board.getLayout();
+			if ((layout.getNumRows() > Short.MAX_VALUE) || (layout.getNumCols() > Short.MAX_VALUE))
+				throw new IllegalArgumentException("puzzle too large to save");
+			int numWords = layout.getNumWords();
+			int numMoves = (journal == null) ? 0 : journal.size();
+			try {
+				out.writeInt(recordLength(numWords, numMoves));
+				out.writeShort(layout.getNumRows());
+				out.writeShort(layout.getNumCols());
+				for (long word : layout.getWalls())
+					out.writeLong(word);
+				for (long word : layout.getTargets())
+					out.writeLong(word);
+				for (int word = 0; word < numWords; word++)
+					out.writeLong(board.getBoxWord(word));
+				out.writeInt(board.getActor());
+				out.writeInt(numMoves);
+				out.writeInt((journal == null) ? 0 : journal.getPosition());
+				for (int move = 0; move < numMoves; move++)
+					out.writeByte(journal.get(move));
+			} catch (IOException e) {
+				throw new SokobanException("" + e);
+			}
+		}
+
+		@Override
+		public void close() {
+			try {
+				out.close();
+			} catch (IOException e) {
+				throw new SokobanException("" + e);
+			}
+		}
+
+		private final DataOutputStream out;
+	}
+
+	/**
+	 * Map a state file and find the states in it
+	 */
+	public StateFile(File file) {
+		if (file == null)
+			throw new IllegalArgumentException("file cannot be null");
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new SokobanException("state file too large to map: " + file);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			throw new SokobanException("" + e);
+		}
+		if ((buffer.limit() < HEADER_LENGTH) || (buffer.getInt(0) != MAGIC))
+			throw new SokobanException("not a state file: " + file);
+		int version = buffer.getInt(4);
+		if (version != VERSION)
+			throw new SokobanException("unsupported state file version " + version + ": " + file);
+		int[] found = new int[16];
+		int count = 0;
+		int offset = HEADER_LENGTH;
+		while ((offset + 8 <= buffer.limit()) && isWhole(offset, buffer.limit(), buffer.getInt(offset),
+				buffer.getShort(offset + 4), buffer.getShort(offset + 6))) {
+			if (count == found.length)
+				found = Arrays.copyOf(found, count * 2);
+			found[count++] = offset;
+			offset += 4 + buffer.getInt(offset);
+		}
+		if (offset < buffer.limit())
+			trace("StateFile: ignoring " + (buffer.limit() - offset) + " bytes after state " + count + ": " + file);
+		offsets = Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * Replace file with a single state
+	 */
+	public static void save(File file, Sokoban puzzle) {
+		if (file == null)
+			throw new IllegalArgumentException("file cannot be null");
+		File temp = new File(file.getPath() + ".tmp");
+		temp.delete();
+		try (Writer writer = new Writer(temp)) {
+			writer.write(puzzle);
+		} catch (IOException e) {
+			throw new SokobanException("" + e);
+		}
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new SokobanException("" + e);
+		}
+	}
+
+	/**
+	 * The last state in file, as a puzzle
+	 */
+	public static Sokoban load(File file) {
+		StateFile states = new StateFile(file);
+		if (states.size() == 0)
+			throw new SokobanException("no states in " + file);
+		return states.getSokoban(states.size() - 1);
+	}
+
+	/**
+	 * Open file to add states to its end; close the writer when done
+	 */
+	public static Writer append(File file) {
+		if (file == null)
+			throw new IllegalArgumentException("file cannot be null");
+		try {
+			return new Writer(file);
+		} catch (IOException e) {
+			throw new SokobanException("" + e);
+		}
+	}
+
+	public int size() {
+		return offsets.length;
+	}
+
+	/**
+	 * The position of the state at index
+	 */
+	public Board getBoard(int index) {
+		int offset = offset(index);
+		Layout layout = layout(offset);
+		int numWords = layout.getNumWords();
+		int at = offset + 8 + 2 * numWords * 8;
+		long[] boxes = new long[numWords];
+		for (int word = 0; word < numWords; word++, at += 8)
+			boxes[word] = buffer.getLong(at);
+		try {
+			return new Board(layout, boxes, buffer.getInt(at));
+		} catch (IllegalArgumentException e) {
+			throw new SokobanException("bad state " + index + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * The number of moves in the journal of the state at index, including
+	 * those undone
+	 */
+	public int getNumMoves(int index) {
+		return buffer.getInt(movesOffset(offset(index)));
+	}
+
+	/**
+	 * The state at index as a puzzle, able to undo and redo its moves
+	 */
+	public Sokoban getSokoban(int index) {
+		int offset = offset(index);
+		Board board = getBoard(index);
+		Layout layout = board.getLayout();
+		int at = movesOffset(offset);
+		int numMoves = buffer.getInt(at);
+		int position = buffer.getInt(at + 4);
+		at += 8;
+		if ((position < 0) || (position > numMoves) || (at + numMoves > offset + 4 + buffer.getInt(offset)))
+			throw new SokobanException("bad journal in state " + index);
+		// take back the moves made, to find the start
+		Board start = new Board(board);
+		for (int move = position - 1; move >= 0; move--) {
+			byte entry = buffer.get(at + move);
+			Direction dir = MoveJournal.direction(entry);
+			int actor = start.getActor();
+			int back = layout.next(actor, dir.reverse());
+			if ((back == Layout.NONE) || layout.isWall(back) || start.hasBox(back))
+				throw new SokobanException("bad move " + move + " in state " + index);
+			if (MoveJournal.pushed(entry)) {
+				int box = layout.next(actor, dir);
+				if ((box == Layout.NONE) || !start.hasBox(box))
+					throw new SokobanException("bad move " + move + " in state " + index);
+				start.setBox(box, false);
+				start.setBox(actor, true);
+			}
+			start.setActor(back);
+		}
+		// ... then make them again, and the undone ones, and undo those
+		Sokoban puzzle = new Sokoban(start);
+		for (int move = 0; move < numMoves; move++) {
+			Direction dir = MoveJournal.direction(buffer.get(at + move));
+			if (!puzzle.canMove(dir))
+				throw new SokobanException("bad move " + move + " in state " + index);
+			puzzle.move(dir);
+		}
+		for (int move = numMoves; move > position; move--)
+			puzzle.undo();
+		if (puzzle.getHash() != board.getHash())
+			throw new SokobanException("journal does not lead to state " + index);
+		return puzzle;
+	}
+
+	private int offset(int index) {
+		if ((index < 0) || (index >= offsets.length))
+			throw new IndexOutOfBoundsException("index " + index + " out of range");
+		return offsets[index];
+	}
+
+	private int movesOffset(int offset) {
+		int numCells = buffer.getShort(offset + 4) * buffer.getShort(offset + 6);
+		return offset + 8 + 3 * Layout.words(numCells) * 8 + 4;
+	}
+
+	/**
+	 * The layout of the state at offset, shared with any earlier state of the
+	 * same level
+	 */
+	private Layout layout(int offset) {
+		int numRows = buffer.getShort(offset + 4);
+		int numCols = buffer.getShort(offset + 6);
+		int numWords = Layout.words(numRows * numCols);
+		long[] walls = new long[numWords];
+		long[] targets = new long[numWords];
+		int at = offset + 8;
+		long h = numRows * 31L + numCols;
+		for (int word = 0; word < numWords; word++, at += 8) {
+			walls[word] = buffer.getLong(at);
+			targets[word] = buffer.getLong(at + numWords * 8);
+			h = (h * 31 + walls[word]) * 31 + targets[word];
+		}
+		Layout layout = layouts.get(h);
+		if ((layout == null) || (layout.getNumRows() != numRows) || !Arrays.equals(layout.getWalls(), walls)
+				|| !Arrays.equals(layout.getTargets(), targets)) {
+			try {
+				layout = new Layout(numRows, numCols, walls, targets);
+			} catch (IllegalArgumentException e) {
+				throw new SokobanException("bad layout at " + offset + ": " + e.getMessage());
+			}
+			layouts.put(h, layout);
+		}
+		return layout;
+	}
+
+	/**
+	 * The bytes in a state after its length: size, walls, targets, boxes,
+	 * actor, move count, position, moves
+	 */
+	private static int recordLength(int numWords, int numMoves) {
+		return 2 + 2 + 3 * numWords * 8 + 4 + 4 + 4 + numMoves;
+	}
+
+	/**
+	 * Is there a whole state at offset, with the length and size read there,
+	 * in a file of limit bytes
+	 */
+	private static boolean isWhole(long offset, long limit, int length, int numRows, int numCols) {
+		return (numRows > 0) && (numCols > 0) && (length >= recordLength(Layout.words(numRows * numCols), 0))
+				&& (offset + 4 + length <= limit);
+	}
+
+	/**
+	 * Check file's header, and cut off anything after its last whole state
+	 */
+	private static void dropPartial(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			ByteBuffer head = ByteBuffer.allocate(HEADER_LENGTH);
+			read(channel, head, 0);
+			if ((head.remaining() < HEADER_LENGTH) || (head.getInt() != MAGIC) || (head.getInt() != VERSION))
+				throw new SokobanException("not a state file of version " + VERSION + ": " + file);
+			long size = channel.size();
+			long offset = HEADER_LENGTH;
+			while (true) {
+				read(channel, head, offset);
+				if ((head.remaining() < 8) || !isWhole(offset, size, head.getInt(0), head.getShort(4),
+						head.getShort(6)))
+					break;
+				offset += 4 + head.getInt(0);
+			}
+			if (offset < size) {
+				trace("StateFile: dropping " + (size - offset) + " bytes after the last state: " + file);
+				channel.truncate(offset);
+			}
+		}
+	}
+
+	/**
+	 * Fill buffer from channel at position, as far as the file goes, and flip
+	 * it
+	 */
+	private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		buffer.clear();
+		int n;
+		while (buffer.hasRemaining() && ((n = channel.read(buffer, position)) >= 0))
+			position += n;
+		buffer.flip();
+	}
+
+	public static void trace(String s) {
+		if (traceOn)
+			System.out.println("trace: " + s);
+	}
+
+	private static final int MAGIC = 0x534b5354; // "SKST"
+	private static final int VERSION = 1;
+	private static final int HEADER_LENGTH = 8;
+
+	private final MappedByteBuffer buffer;
+	private final int[] offsets; // of each state's length
+	private final ConcurrentHashMap<Long, Layout> layouts = new ConcurrentHashMap<>();
+
+	private static boolean traceOn = false; // for debugging
+}
@@ -0,0 +1,256 @@
+package sokoban;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The positions reached by a search, held off the Java heap so that tens of
+ * millions of them cost the garbage collector nothing. Fixed-size entries in
+ * direct ByteBuffers, numbered in the order they are added: each holds the
+ * box bitset, the actor's cell (normalized to its region, for a push search),
+ * the cost so far, the estimated total, the parent's entry and the push that
+ * led here. An entry's number is its id. They are found by an index, open
+ * addressing on the Zobrist hash, also off the heap. Memory is taken as the
+ * store fills, a segment of entries at a time, the index doubling when three
+ * quarters full; the memory it is given is a cap, not a reservation, and once
+ * it is reached the store takes no more. (Direct buffers, as the code targets
+ * Java 11; the memory is freed when the store is no longer reachable, within
+ * -XX:MaxDirectMemorySize.)
+ */
+public class StateStore {
+
+	public StateStore(Sokoban puzzle, long maxBytes) {
+		this(puzzle.getLayout(), maxBytes);
+	}
+
+	StateStore(Layout layout, long maxBytes) {
+		if (layout == null)
+			throw new IllegalArgumentException("layout cannot be null");
+		this.layout = layout;
+		numWords = layout.getNumWords();
+		entrySize = BOXES + numWords * 8;
+		// an index slot takes 4 bytes and is at most 3 in 8 used once grown, so
+		// with the old index kept while the new one is built, 16 bytes an entry
+		long size = Math.min(maxBytes / (entrySize + 16), MAX_SIZE);
+		if (size < 2)
+			throw new IllegalArgumentException("maxBytes too small for even two positions");
+		maxSize = (int) size;
+		segmentShift = Math.min(Math.min(SEGMENT_SHIFT, 31 - Integer.numberOfLeadingZeros(SEGMENT_BYTES / entrySize)),
+				32 - Integer.numberOfLeadingZeros(maxSize - 1));
+		index = ByteBuffer.allocateDirect(MIN_INDEX * 4);
+		mask = MIN_INDEX - 1;
+		trace("StateStore: up to " + maxSize + " entries of " + entrySize + " bytes");
+	}
+
+	/**
+	 * Store board, unless it is there already as cheaply
+	 *
+	 * @param g the cost of reaching board
+	 * @param f the estimated total cost through board
+	 * @param parent the id of the position board was reached from, or NONE
+	 * @param push the move that reached it, as the caller encodes it
+	 * @return id the id of board's entry, NONE if it was there already with
+	 *         cost g or less, or FULL if the store has no room
+	 */
+	public int add(Board board, int g, int f, int parent, int push) {
+		if (board.getLayout() != layout)
+			throw new IllegalArgumentException("board is from another puzzle");
+		long hash = board.getHash();
+		int slot = slot(board, hash);
+		int id = index.getInt(slot * 4) - 1;
+		if (id != NONE) {
+			ByteBuffer buffer = segment(id);
+			int at = offset(id);
+			if (buffer.getInt(at + G) <= g)
+				return NONE;
+			put(buffer, at, g, f, parent, push);
+			return id;
+		}
+		if (size >= maxSize)
+			return FULL;
+		id = size;
+		if ((id >>> segmentShift) == numSegments)
+			addSegment();
+		ByteBuffer buffer = segment(id);
+		int at = offset(id);
+		buffer.putLong(at + HASH, hash);
+		buffer.putInt(at + ACTOR, board.getActor());
+		for (int word = 0; word < numWords; word++)
+			buffer.putLong(at + BOXES + word * 8, board.getBoxWord(word));
+		put(buffer, at, g, f, parent, push);
+		size++;
+		index.putInt(slot * 4, id + 1); // 0 marks an empty slot
+		if (size > (mask + 1) / 4 * 3)
+			growIndex();
+		return id;
+	}
+
+	/**
+	 * The id of board's entry, or NONE
+	 */
+	public int find(Board board) {
+		if (board.getLayout() != layout)
+			throw new IllegalArgumentException("board is from another puzzle");
+		return index.getInt(slot(board, board.getHash()) * 4) - 1;
+	}
+
+	/**
+	 * The position stored at id, as a new Board
+	 */
+	public Board getBoard(int id) {
+		ByteBuffer buffer = entry(id);
+		int at = offset(id);
+		long[] boxes = new long[numWords];
+		for (int word = 0; word < numWords; word++)
+			boxes[word] = buffer.getLong(at + BOXES + word * 8);
+		return new Board(layout, boxes, buffer.getInt(at + ACTOR));
+	}
+
+	public int getG(int id) {
+		return entry(id).getInt(offset(id) + G);
+	}
+
+	public int getF(int id) {
+		return entry(id).getInt(offset(id) + F);
+	}
+
+	public int getParent(int id) {
+		return entry(id).getInt(offset(id) + PARENT);
+	}
+
+	public int getPush(int id) {
+		return entry(id).getInt(offset(id) + PUSH);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The most positions the store will take
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * The memory held so far, in bytes
+	 */
+	public long getMemory() {
+		long memory = (long) index.capacity();
+		for (int segment = 0; segment < numSegments; segment++)
+			memory += segments[segment].capacity();
+		return memory;
+	}
+
+	/**
+	 * The index slot holding board's id, or the empty slot where it would go
+	 */
+	private int slot(Board board, long hash) {
+		int actor = board.getActor();
+		for (int slot = spread(hash) & mask;; slot = (slot + 1) & mask) {
+			int id = index.getInt(slot * 4) - 1;
+			if (id == NONE)
+				return slot;
+			ByteBuffer buffer = segment(id);
+			int at = offset(id);
+			if ((buffer.getLong(at + HASH) == hash) && (buffer.getInt(at + ACTOR) == actor)
+					&& sameBoxes(buffer, at, board))
+				return slot;
+		}
+	}
+
+	/**
+	 * Double the index, placing each entry again by its stored hash
+	 */
+	private void growIndex() {
+		int capacity = (mask + 1) * 2;
+		ByteBuffer grown = ByteBuffer.allocateDirect(capacity * 4);
+		int newMask = capacity - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = spread(segment(id).getLong(offset(id) + HASH)) & newMask;
+			while (grown.getInt(slot * 4) != 0)
+				slot = (slot + 1) & newMask;
+			grown.putInt(slot * 4, id + 1);
+		}
+		index = grown;
+		mask = newMask;
+	}
+
+	private void addSegment() {
+		if (numSegments == segments.length)
+			segments = Arrays.copyOf(segments, numSegments * 2);
+		int entries = Math.min(1 << segmentShift, maxSize - (numSegments << segmentShift));
+		segments[numSegments++] = ByteBuffer.allocateDirect(entries * entrySize);
+	}
+
+	private void put(ByteBuffer buffer, int at, int g, int f, int parent, int push) {
+		buffer.putInt(at + G, g);
+		buffer.putInt(at + F, f);
+		buffer.putInt(at + PARENT, parent);
+		buffer.putInt(at + PUSH, push);
+	}
+
+	private boolean sameBoxes(ByteBuffer buffer, int at, Board board) {
+		for (int word = 0; word < numWords; word++)
+			if (buffer.getLong(at + BOXES + word * 8) != board.getBoxWord(word))
+				return false;
+		return true;
+	}
+
+	/**
+	 * The buffer holding entry id, checking that there is one
+	 */
+	private ByteBuffer entry(int id) {
+		if ((id < 0) || (id >= size))
+			throw new IllegalArgumentException("no position " + id);
+		return segment(id);
+	}
+
+	private ByteBuffer segment(int id) {
+		return segments[id >>> segmentShift];
+	}
+
+	private int offset(int id) {
+		return (id & ((1 << segmentShift) - 1)) * entrySize;
+	}
+
+	private static int spread(long hash) {
+		return (int) ((hash * 0x9e3779b97f4a7c15L) >>> 32);
+	}
+
+	public static void trace(String s) {
+		if (traceOn)
+			System.out.println("trace: " + s);
+	}
+
+	public static final int NONE = -1;
+	public static final int FULL = -2;
+
+	// entry layout, in bytes
+	private static final int HASH = 0;
+	private static final int ACTOR = 8;
+	private static final int G = 12;
+	private static final int F = 16;
+	private static final int PARENT = 20;
+	private static final int PUSH = 24;
+	private static final int BOXES = 32; // then the box bitset, word by word
+
+	private static final int SEGMENT_BYTES = 1 << 30; // the most in one buffer
+	private static final int SEGMENT_SHIFT = 16; // entries in a segment, as log2, at most
+	private static final int MIN_INDEX = 1 << 10; // slots
+	private static final long MAX_SIZE = (1L << 28) / 4 * 3; // an index of at most 1 GB
+
+	private final Layout layout;
+	private final int numWords;
+	private final int entrySize;
+	private final int maxSize;
+	private final int segmentShift; // log2 of the entries in each full segment
+	private ByteBuffer[] segments = new ByteBuffer[16];
+	private int numSegments = 0;
+	private ByteBuffer index; // id + 1 of the entry in each slot, 0 if empty
+	private int mask; // index slots - 1
+	private int size = 0;
+
+	private static boolean traceOn = false; // for debugging
+}
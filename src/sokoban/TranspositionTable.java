@@ -0,0 +1,107 @@
+package sokoban;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size table from 64-bit position hashes (see {@link Board#getHash()})
+ * to int values. Entries live in two-slot buckets: a lookup probes both slots,
+ * and a store replaces the same key, else an empty slot, else the slot with the
+ * lower depth. The table never grows, so old entries may be lost.
+ */
+public class TranspositionTable {
+
+	public TranspositionTable(int capacity) {
+		if (capacity < 2)
+			throw new IllegalArgumentException("capacity must be at least 2");
+		if (capacity > MAX_CAPACITY)
+			throw new IllegalArgumentException("capacity cannot be more than " + MAX_CAPACITY);
+		int size = Integer.highestOneBit(capacity);
+		keys = new long[size];
+		values = new int[size];
+		depths = new int[size];
+		mask = (size - 1) & ~1;
+	}
+
+	public int getCapacity() {
+		return keys.length;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(long key) {
+		return slot(key) >= 0;
+	}
+
+	/**
+	 * The value stored for key
+	 *
+	 * @return value the value, or MISSING if key is not in the table
+	 */
+	public int get(long key) {
+		int slot = slot(key);
+		return (slot < 0) ? MISSING : values[slot];
+	}
+
+	/**
+	 * Store a value for key, possibly evicting an entry of lower depth
+	 *
+	 * @param depth how valuable the entry is, 0 or more
+	 * @return stored false if a deeper entry occupies both slots
+	 */
+	public boolean put(long key, int value, int depth) {
+		if (depth < 0)
+			throw new IllegalArgumentException("depth cannot be negative");
+		int first = bucket(key);
+		int second = first + 1;
+		int slot;
+		if ((depths[first] != EMPTY) && (keys[first] == key))
+			slot = first;
+		else if ((depths[second] != EMPTY) && (keys[second] == key))
+			slot = second;
+		else if (depths[first] == EMPTY)
+			slot = first;
+		else if (depths[second] == EMPTY)
+			slot = second;
+		else
+			slot = (depths[first] <= depths[second]) ? first : second;
+		if (depths[slot] == EMPTY)
+			size++;
+		else if ((keys[slot] != key) && (depths[slot] > depth + 1))
+			return false;
+		keys[slot] = key;
+		values[slot] = value;
+		depths[slot] = depth + 1;
+		return true;
+	}
+
+	public void clear() {
+		Arrays.fill(depths, EMPTY);
+		size = 0;
+	}
+
+	private int slot(long key) {
+		int first = bucket(key);
+		if ((depths[first] != EMPTY) && (keys[first] == key))
+			return first;
+		if ((depths[first + 1] != EMPTY) && (keys[first + 1] == key))
+			return first + 1;
+		return -1;
+	}
+
+	private int bucket(long key) {
+		return (int) (key ^ (key >>> 32)) & mask;
+	}
+
+	public static final int MISSING = Integer.MIN_VALUE;
+
+	private static final int EMPTY = 0;
+	private static final int MAX_CAPACITY = 1 << 30;
+
+	private final long[] keys;
+	private final int[] values;
+	private final int[] depths; // depth + 1, or EMPTY
+	private final int mask;
+	private int size = 0;
+}